@@ -0,0 +1,35 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.service.AdminService;
+
+/**
+ * The class helps listen to administrative request at "/admin"
+ */
+@Slf4j
+@RestController
+@RequestMapping("/admin")
+@RequiredArgsConstructor
+public class AdminController {
+
+    /**
+     * @see AdminService
+     */
+    private final AdminService adminService;
+
+    /**
+     * Reloads cached genres and MPA ratings after they were changed in the database
+     */
+    @PostMapping("/reference-data/refresh")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void refreshReferenceData() {
+        log.info("refresh reference data write it to the log");
+        adminService.refreshReferenceData();
+    }
+}
@@ -8,6 +8,8 @@ import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.yandex.practicum.filmorate.exception.*;
 import ru.yandex.practicum.filmorate.model.ErrorResponse;
 
+import javax.validation.ConstraintViolationException;
+
 /**
  * The class helps to handle program exceptions and send info to user as error response with specified data and status
  */
@@ -75,6 +77,18 @@ public class ErrorHandler {
         return new ErrorResponse(e.getFieldError().getDefaultMessage());
     }
 
+    /**
+     * @param e thrown ConstraintViolationException for invalid request parameters of validated controllers
+     * @return response status and data as ErrorResponse json with specified error
+     * @see ConstraintViolationException
+     * @see ErrorResponse
+     */
+    @ExceptionHandler
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public ErrorResponse handleConstraintViolationException(final ConstraintViolationException e) {
+        return new ErrorResponse(e.getMessage());
+    }
+
     /**
      * @param e thrown NoSuchIdException
      * @return response status and data as ErrorResponse json with specified error
@@ -1,13 +1,18 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.*;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.FilmValidator;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.Positive;
 import java.util.EnumSet;
@@ -17,6 +22,7 @@ import java.util.List;
  * The class helps listen to user request at "/films"
  */
 @Slf4j
+@Validated
 @RestController
 @RequestMapping("/films")
 @RequiredArgsConstructor
@@ -33,12 +39,37 @@ public class FilmController {
     private final FilmValidator filmValidator;
 
     /**
-     * @return all films saved in storage at the current moment
+     * @see ObjectMapper
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param after the identifier of the last film of the previous page,
+     *              if present then only films with greater identifiers are returned
+     * @param limit the number of films in the page up to {@value FilmService#MAX_PAGE_SIZE},
+     *              if absent and after is present then limit = 100
+     * @return all films saved in storage at the current moment if no paging parameter is present,
+     * else one page of films ordered by identifier
      * @see Film
      */
     @GetMapping
-    public List<Film> findAll() {
-        return filmService.findAll();
+    public List<Film> findAll(@RequestParam(required = false, value = "after") Long after,
+                            @RequestParam(required = false, value = "limit") @Positive
+                            @Max(FilmService.MAX_PAGE_SIZE) Integer limit) {
+        if (after == null && limit == null) {
+            return filmService.findAll();
+        }
+        return filmService.findPage(after, limit);
+    }
+
+    /**
+     * @return all films saved in storage at the current moment ordered by identifier,
+     * written as a JSON array while films are read from storage
+     * @see Film
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return JsonArrayStream.of(objectMapper, filmService::streamAll);
     }
 
     /**
@@ -152,6 +183,19 @@ public class FilmController {
         return filmService.searchFilms(text, searchParams);
     }
 
+    /**
+     * @param prefix the beginning of the film title or director name, or of one of their words
+     * @param limit  the number of suggestions to be returned, if absent then limit = 10
+     * @return films and directors matching the prefix, the most popular first
+     * @see Suggestion
+     */
+    @GetMapping("/suggest")
+    public List<Suggestion> suggest(@RequestParam(value = "prefix") @NotBlank String prefix,
+                                    @RequestParam(required = false, value = "limit", defaultValue = "10")
+                                    @Positive int limit) {
+        return filmService.suggest(prefix, limit);
+    }
+
     /**
      * @param directorId the director identifier the film of which to be returned
      * @param sortBy     sorting parameter for films returned, could be specified as likes or year
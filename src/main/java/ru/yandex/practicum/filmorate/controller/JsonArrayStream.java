@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * The class helps controllers write large collections as one JSON array
+ * chunk by chunk, while the chunks are still being read from the storage.
+ *
+ * @see FilmController#streamAll()
+ * @see UserController#streamAll()
+ */
+final class JsonArrayStream {
+
+    private JsonArrayStream() {
+    }
+
+    /**
+     * @param objectMapper the mapper used to serialize the elements
+     * @param source       the method passing chunks of elements to the given consumer, e.g. a storage stream method
+     * @param <T>          type of elements
+     * @return response writing the elements as a JSON array and flushing it after every chunk
+     */
+    static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper objectMapper,
+                                                        Consumer<Consumer<List<T>>> source) {
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                source.accept(chunk -> {
+                    try {
+                        for (T element : chunk) {
+                            generator.writeObject(element);
+                        }
+                        generator.flush();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+}
@@ -67,14 +67,17 @@ public class ReviewController {
     /**
      * @param filmId the specified identifier for the film, which reviews to be searched
      * @param count  the number of reviews to be returned, if absent then count = 10
+     * @param after  the position of the last review of the previous page as "useful,reviewId",
+     *               if absent then the first page is returned
      * @return reviews of the certain film under this film specified identifier
      * @see Review
      * @see Film
      */
     @GetMapping
     public List<Review> getAllReviews(@RequestParam(required = false) Long filmId,
-                                      @RequestParam(defaultValue = "10") Integer count) {
-        return reviewService.getAll(filmId, count);
+                                      @RequestParam(defaultValue = "10") Integer count,
+                                      @RequestParam(required = false) String after) {
+        return reviewService.getAll(filmId, count, after);
     }
 
     /**
@@ -1,21 +1,31 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Separation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 import ru.yandex.practicum.filmorate.service.UserValidator;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Positive;
 import java.util.List;
 
 /**
  * The class helps listen to user request at "/users"
  */
 @Slf4j
+@Validated
 @RestController
 @RequestMapping("/users")
 @RequiredArgsConstructor
@@ -32,12 +42,37 @@ public class UserController {
     private final UserValidator userValidator;
 
     /**
-     * @return all users saved in storage at the current moment
+     * @see ObjectMapper
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * @param after the identifier of the last user of the previous page,
+     *              if present then only users with greater identifiers are returned
+     * @param limit the number of users in the page up to {@value UserService#MAX_PAGE_SIZE},
+     *              if absent and after is present then limit = 100
+     * @return all users saved in storage at the current moment if no paging parameter is present,
+     * else one page of users ordered by identifier
      * @see User
      */
     @GetMapping
-    public List<User> findAll() {
-        return userService.findAll();
+    public List<User> findAll(@RequestParam(required = false, value = "after") Long after,
+                            @RequestParam(required = false, value = "limit") @Positive
+                            @Max(UserService.MAX_PAGE_SIZE) Integer limit) {
+        if (after == null && limit == null) {
+            return userService.findAll();
+        }
+        return userService.findPage(after, limit);
+    }
+
+    /**
+     * @return all users saved in storage at the current moment ordered by identifier,
+     * written as a JSON array while users are read from storage
+     * @see User
+     */
+    @GetMapping(params = "stream=true")
+    public ResponseEntity<StreamingResponseBody> streamAll() {
+        return JsonArrayStream.of(objectMapper, userService::streamAll);
     }
 
     /**
@@ -129,14 +164,80 @@ public class UserController {
     }
 
     /**
-     * @param id the identifier for the user which feeds would be returned
-     * @return the feeds of the certain user under specified identifier
+     * @param id    the identifier for the user to whom friends are suggested
+     * @param limit the number of suggestions to be returned, if absent then limit = 10
+     * @return friends of the user's friends who are not friends of the user, the most mutual friends first
+     * @see FriendSuggestion
+     */
+    @GetMapping("/{id}/friends/suggestions")
+    public List<FriendSuggestion> suggestFriends(@PathVariable Long id,
+                                                 @RequestParam(required = false, value = "limit", defaultValue = "10")
+                                                 @Positive int limit) {
+        return userService.suggestFriends(id, limit);
+    }
+
+    /**
+     * @param id       the identifier for the user where the chain of friendships starts
+     * @param otherId  the identifier for the user where the chain of friendships ends
+     * @param maxDepth the longest chain to look for, if absent then maxDepth = 6
+     * @return the number of friendships in the shortest chain between the users
+     * @see Separation
+     */
+    @GetMapping("/{id}/separation/{otherId}")
+    public Separation separation(@PathVariable Long id, @PathVariable Long otherId,
+                                 @RequestParam(required = false, value = "maxDepth", defaultValue = "6")
+                                 int maxDepth) {
+        return userService.separation(id, otherId, maxDepth);
+    }
+
+    /**
+     * @param id            the identifier for the user which feeds would be returned
+     * @param afterEventId  the identifier of the event the page starts after, then the next events are returned
+     * @param beforeEventId the identifier of the event the page ends before, if absent then the newest events
+     * @param limit         the maximum number of events in the page up to {@value UserService#MAX_FEED_PAGE_SIZE},
+     *                      if absent then limit = 100
+     * @return one page of the feeds of the certain user under specified identifier in ascending order
      * @see User
      * @see Feed
      */
     @GetMapping("/{id}/feed")
-    public List<Feed> feed(@PathVariable Long id) {
-        return userService.feed(id);
+    public List<Feed> feed(@PathVariable Long id,
+                           @RequestParam(required = false) Long afterEventId,
+                           @RequestParam(required = false) Long beforeEventId,
+                           @RequestParam(required = false) @Positive
+                           @Max(UserService.MAX_FEED_PAGE_SIZE) Integer limit) {
+        return userService.feed(id, afterEventId, beforeEventId, limit);
+    }
+
+    /**
+     * @param id            the identifier for the user which timeline would be returned
+     * @param beforeEventId the identifier of the event the page ends before, if absent then the newest events
+     * @param limit         the maximum number of events in the page up to {@value UserService#MAX_FEED_PAGE_SIZE},
+     *                      if absent then limit = 100
+     * @return one page of the feeds of friends of the certain user, the newest first
+     * @see Feed
+     */
+    @GetMapping("/{id}/timeline")
+    public List<Feed> timeline(@PathVariable Long id,
+                               @RequestParam(required = false) Long beforeEventId,
+                               @RequestParam(required = false) @Positive
+                               @Max(UserService.MAX_FEED_PAGE_SIZE) Integer limit) {
+        return userService.timeline(id, beforeEventId, limit);
+    }
+
+    /**
+     * @param id           the identifier for the user which feeds would be streamed
+     * @param afterEventId the identifier of the last event known to the client,
+     *                     if absent then the Last-Event-ID header is used, then only new events are sent
+     * @param lastEventId  the Last-Event-ID header sent by the client on reconnect
+     * @return server-sent events with the feeds of the certain user added since
+     * @see Feed
+     */
+    @GetMapping("/{id}/feed/stream")
+    public SseEmitter feedStream(@PathVariable Long id,
+                                 @RequestParam(required = false) Long afterEventId,
+                                 @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return userService.feedStream(id, afterEventId != null ? afterEventId : lastEventId);
     }
 
     @GetMapping("/{id}/recommendations")
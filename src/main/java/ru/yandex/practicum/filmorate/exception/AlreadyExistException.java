@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class AlreadyExistException extends RuntimeException {
+public class AlreadyExistException extends FilmorateException {
     public AlreadyExistException(String message) {
         super(message);
     }
@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class DirectorNotFoundException extends RuntimeException {
+public class DirectorNotFoundException extends FilmorateException {
 
     public DirectorNotFoundException(String message) {
         super(message);
@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class FilmNotFoundException extends RuntimeException {
+public class FilmNotFoundException extends FilmorateException {
     public FilmNotFoundException(String message) {
         super(message);
     }
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.exception;
+
+/**
+ * Base class of the domain exceptions. They report ordinary outcomes such as an unknown identifier,
+ * which are turned into error responses by the error handler, so the stack trace is never used
+ * and is not filled in. Suppression is disabled as well.
+ */
+public abstract class FilmorateException extends RuntimeException {
+    protected FilmorateException(String message) {
+        super(message, null, false, false);
+    }
+}
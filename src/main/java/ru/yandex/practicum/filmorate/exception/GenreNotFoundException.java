@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class GenreNotFoundException extends RuntimeException {
+public class GenreNotFoundException extends FilmorateException {
     public GenreNotFoundException(String message) {
         super(message);
     }
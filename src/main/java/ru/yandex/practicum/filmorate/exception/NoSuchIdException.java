@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class NoSuchIdException extends RuntimeException {
+public class NoSuchIdException extends FilmorateException {
     public NoSuchIdException(String message) {
         super(message);
     }
@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class NoSuchReactFind extends RuntimeException {
+public class NoSuchReactFind extends FilmorateException {
     public NoSuchReactFind(String message) {
         super(message);
     }
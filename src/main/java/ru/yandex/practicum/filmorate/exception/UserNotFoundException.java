@@ -1,6 +1,6 @@
 package ru.yandex.practicum.filmorate.exception;
 
-public class UserNotFoundException extends RuntimeException {
+public class UserNotFoundException extends FilmorateException {
     public UserNotFoundException(String message) {
         super(message);
     }
@@ -19,7 +19,7 @@ import java.util.SortedSet;
  * Film parameters should meet some basic requirements
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 public class Film {
 
     /**
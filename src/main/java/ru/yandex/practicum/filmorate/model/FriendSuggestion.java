@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This class describes the suggested friend: a friend of the user's friends
+ * who is not a friend of the user yet.
+ *
+ * @see User
+ */
+@Data
+@Builder
+public class FriendSuggestion {
+
+    /**
+     * the suggested user
+     */
+    private User user;
+
+    /**
+     * the number of the user's friends who have the suggested user as a friend
+     */
+    private int mutualFriends;
+}
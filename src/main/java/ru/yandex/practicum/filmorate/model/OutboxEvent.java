@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+
+/**
+ * This class describes the change made by user, recorded in the outbox
+ * in the same transaction as the change itself.
+ *
+ * @see ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay
+ */
+@Data
+@Builder
+public class OutboxEvent {
+
+    /**
+     * the identifier of the event in the outbox, events of one transaction have ascending identifiers
+     */
+    private Long eventId;
+
+    /**
+     * the time of the change
+     */
+    private Long timestamp;
+
+    /**
+     * the kind of changed data: LIKE, REVIEW, FRIEND
+     *
+     * @see EventType
+     */
+    private EventType eventType;
+
+    /**
+     * the change made: REMOVE, ADD, UPDATE
+     *
+     * @see OperationType
+     */
+    private OperationType operation;
+
+    /**
+     * the identifier of user who made the change
+     *
+     * @see User
+     */
+    private Long userId;
+
+    /**
+     * the identifier of the changed entity: the liked film, the added or removed friend, the review
+     *
+     * @see Film
+     * @see Review
+     */
+    private Long entityId;
+
+    /**
+     * the number of failed attempts to apply the event by the subscribers which keep the result in the database
+     */
+    private int attempts;
+}
@@ -0,0 +1,30 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This class describes how far one user is from another one in the graph of friendships.
+ *
+ * @see User
+ */
+@Data
+@Builder
+public class Separation {
+
+    /**
+     * the identifier of the user where the chain of friendships starts
+     */
+    private Long userId;
+
+    /**
+     * the identifier of the user where the chain of friendships ends
+     */
+    private Long otherId;
+
+    /**
+     * the number of friendships in the shortest chain, 1 for a friend, 2 for a friend of a friend and so on.
+     * Absent if there is no chain not longer than the requested depth
+     */
+    private Integer degree;
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * This class describes the lightweight autocomplete suggestion for the typed prefix:
+ * a film or a director without any related data.
+ *
+ * @see SuggestionType
+ */
+@Data
+@Builder
+public class Suggestion {
+
+    /**
+     * the kind of suggested entity: film or director
+     *
+     * @see SuggestionType
+     */
+    private SuggestionType type;
+
+    /**
+     * the identifier of the suggested film or director
+     */
+    private Long id;
+
+    /**
+     * the title of the film or the name of the director
+     */
+    private String name;
+
+    /**
+     * the number of likes of the film, for the director the total number of likes of his films
+     */
+    private int popularity;
+}
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.model;
+
+/**
+ * This class helps to define the kind of entity suggested for the typed prefix.
+ *
+ * @see Suggestion
+ */
+public enum SuggestionType {
+
+    /**
+     * the suggestion is a film, its name is the title of the film
+     *
+     * @see Film
+     */
+    film,
+
+    /**
+     * the suggestion is a director, its name is the name of the director
+     *
+     * @see Director
+     */
+    director
+}
@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.controller.AdminController;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
+
+/**
+ * This class helps lever AdminController translated administrative requests to inner layer of storage
+ *
+ * @see AdminController
+ * @see ReferenceDataCache
+ * @see FilmCache
+ */
+@Service
+@RequiredArgsConstructor
+public class AdminService {
+    private final ReferenceDataCache referenceDataCache;
+
+    private final FilmCache filmCache;
+
+    /**
+     * Reload genres and MPA ratings from the database into the reference data cache.
+     * Cached films hold the old genres and ratings, so they are dropped too
+     */
+    public void refreshReferenceData() {
+        referenceDataCache.refresh();
+        filmCache.invalidateAll();
+    }
+}
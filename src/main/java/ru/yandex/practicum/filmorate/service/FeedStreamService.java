@@ -0,0 +1,193 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Class is provide live streams of user feeds as server-sent events.
+ * Events added to the storage are received after commit and sent to the streams of their user
+ * by a single thread, so a slow client never holds the request which added the event.
+ * A stream may start from a known event, then missed events are read from the storage first.
+ * Such a stream is registered by the sending thread right before the missed events are read,
+ * so a new event is either read from the storage or sent after them, never before.
+ * The list of streams of a user is removed when the last of them is closed.
+ */
+@Slf4j
+@Service
+public class FeedStreamService {
+
+    /**
+     * number of events read from the storage at once when a stream catches up
+     */
+    private static final int REPLAY_PAGE_SIZE = 500;
+
+    /**
+     * @see FeedDbStorageImpl
+     */
+    private final FeedDbStorageImpl feedDbStorage;
+
+    private final long timeoutMillis;
+
+    private final Map<Long, List<Subscription>> subscriptions = new ConcurrentHashMap<>();
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "feed-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public FeedStreamService(FeedDbStorageImpl feedDbStorage,
+                             MeterRegistry meterRegistry,
+                             @Value("${filmorate.feed.stream.timeout-millis:1800000}") long timeoutMillis) {
+        this.feedDbStorage = feedDbStorage;
+        this.timeoutMillis = timeoutMillis;
+        Gauge.builder("filmorate.feed.stream.users", subscriptions, Map::size)
+                .description("Number of users with open feed streams")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Opens a stream of new events by user
+     *
+     * @param userId       the specified as identifier of user
+     * @param afterEventId identifier of the last event known to the client, the stored events after it are sent first,
+     *                     if absent then only events added from now on are sent
+     * @return the emitter of the stream
+     * @see Feed
+     */
+    public SseEmitter subscribe(Long userId, Long afterEventId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscription subscription = new Subscription(emitter, afterEventId == null ? 0L : afterEventId);
+        Runnable remove = () -> unregister(userId, subscription);
+        emitter.onCompletion(remove);
+        emitter.onTimeout(remove);
+        emitter.onError(e -> remove.run());
+        if (afterEventId == null) {
+            register(userId, subscription);
+        } else {
+            sender.execute(() -> {
+                if (register(userId, subscription)) {
+                    replay(userId, subscription);
+                }
+            });
+        }
+        log.debug("feed stream of user {} opened after event {}", userId, afterEventId);
+        return emitter;
+    }
+
+    /**
+     * Sends the committed event to all streams of its user
+     *
+     * @param feed the added event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeedAdded(Feed feed) {
+        List<Subscription> userSubscriptions = subscriptions.get(feed.getUserId());
+        if (userSubscriptions == null || userSubscriptions.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> userSubscriptions.forEach(subscription -> subscription.send(feed)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        subscriptions.values().forEach(list -> list.forEach(subscription -> {
+            try {
+                subscription.emitter.complete();
+            } catch (RuntimeException e) {
+                log.debug("feed stream is already closed: {}", e.getMessage());
+            }
+        }));
+    }
+
+    /**
+     * Adds the stream to the streams of the user unless it is closed already
+     *
+     * @return true if the stream is added
+     */
+    private boolean register(Long userId, Subscription subscription) {
+        List<Subscription> userSubscriptions = subscriptions.compute(userId, (id, list) -> {
+            if (subscription.closed) {
+                return list;
+            }
+            List<Subscription> result = list == null ? new CopyOnWriteArrayList<>() : list;
+            result.add(subscription);
+            return result;
+        });
+        return userSubscriptions != null && userSubscriptions.contains(subscription);
+    }
+
+    /**
+     * Removes the closed stream, the list of streams of the user is removed with its last stream
+     */
+    private void unregister(Long userId, Subscription subscription) {
+        subscription.closed = true;
+        subscriptions.computeIfPresent(userId, (id, list) -> {
+            list.remove(subscription);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    private void replay(Long userId, Subscription subscription) {
+        List<Feed> page;
+        do {
+            page = feedDbStorage.get(userId, subscription.lastEventId, null, REPLAY_PAGE_SIZE);
+            for (Feed feed : page) {
+                if (!subscription.send(feed)) {
+                    return;
+                }
+            }
+        } while (page.size() == REPLAY_PAGE_SIZE);
+    }
+
+    /**
+     * Stream of one client, events not newer than the last sent one are skipped
+     */
+    private static final class Subscription {
+
+        private final SseEmitter emitter;
+
+        private long lastEventId;
+
+        private volatile boolean closed;
+
+        private Subscription(SseEmitter emitter, long lastEventId) {
+            this.emitter = emitter;
+            this.lastEventId = lastEventId;
+        }
+
+        private boolean send(Feed feed) {
+            if (feed.getEventId() <= lastEventId) {
+                return true;
+            }
+            try {
+                emitter.send(SseEmitter.event()
+                        .id(String.valueOf(feed.getEventId()))
+                        .name("feed")
+                        .data(feed));
+                lastEventId = feed.getEventId();
+                return true;
+            } catch (IOException | IllegalStateException e) {
+                emitter.completeWithError(e);
+                return false;
+            }
+        }
+    }
+}
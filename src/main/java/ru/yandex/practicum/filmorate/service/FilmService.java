@@ -2,19 +2,25 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.controller.FilmController;
+import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.SearchParam;
 import ru.yandex.practicum.filmorate.model.SortParam;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
-import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
 import ru.yandex.practicum.filmorate.storage.impl.LikesDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static ru.yandex.practicum.filmorate.model.feedEnum.EventType.LIKE;
 import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.ADD;
 import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.REMOVE;
 
@@ -25,17 +31,31 @@ import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.REMOVE;
  * @see FilmController
  * @see FilmStorage
  * @see UserStorage
- * @see FeedDbStorageImpl
+ * @see OutboxRelay
  * @see LikesDbStorageImpl
+ * @see FilmSearchIndex
+ * @see FilmCache
  */
 
 @Service
 @RequiredArgsConstructor
 public class FilmService {
+    /**
+     * number of films in the page when the limit is not specified
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * the largest number of films in one page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
-    private final FeedDbStorageImpl feedDbStorage;
+    private final OutboxRelay outboxRelay;
     private final LikesDbStorageImpl likesDbStorage;
+    private final FilmSearchIndex filmSearchIndex;
+    private final FilmCache filmCache;
 
     /**
      * Find all films in storage
@@ -47,6 +67,28 @@ public class FilmService {
         return filmStorage.findAll();
     }
 
+    /**
+     * Find one page of films in storage ordered by identifier
+     *
+     * @param after identifier of the last film of the previous page, if absent then the first page
+     * @param limit maximum number of films in the page, if absent then {@value #DEFAULT_PAGE_SIZE}
+     * @return List of Film with identifiers greater than after
+     * @see Film
+     */
+    public List<Film> findPage(Long after, Integer limit) {
+        return filmStorage.findPage(after == null ? 0L : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    /**
+     * Pass all films in storage to the consumer chunk by chunk without loading them at once
+     *
+     * @param consumer receiver of the chunks of films ordered by identifier
+     * @see Film
+     */
+    public void streamAll(Consumer<List<Film>> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
     /**
      * Create movie in the storage
      *
@@ -92,38 +134,49 @@ public class FilmService {
     }
 
     /**
-     * Give the movie a like
+     * Give the movie a like. The like and its event in the outbox are written in one transaction.
+     * The cached film is dropped at once and after commit, so it is read with the like
+     * even before the outbox relay passes the event
      *
      * @param filmID id of the movie to like
      * @param userID id of the user who likes the movie
      * @return Film with likes
      * @see Film
      */
+    @Transactional
     public Film likeFilm(Long filmID, Long userID) {
         Film film = filmStorage.findFilmById(filmID);
-        User user = userStorage.findUserById(userID);
-        film.getLikes().add(user.getId());
-        if (!likesDbStorage.containsLike(filmID, userID)) {
-            filmStorage.update(film);
-            feedDbStorage.addLike(userID, ADD, filmID);
-        } else filmStorage.update(film);
+        if (!userStorage.containsIdUser(userID)) {
+            throw new UserNotFoundException(userID + " id - user not found");
+        }
+        if (likesDbStorage.addLike(filmID, userID)) {
+            film.getLikes().add(userID);
+            filmCache.invalidate(filmID);
+            outboxRelay.append(LIKE, ADD, userID, filmID);
+        }
         return film;
     }
 
     /**
-     * Remove the like from the movie
+     * Remove the like from the movie. The removal and its event in the outbox are written in one transaction.
+     * The cached film is dropped at once and after commit, the same way as for a like
      *
      * @param id     film id
      * @param userId user id
      * @return Film
      * @see Film
      */
+    @Transactional
     public Film deleteLikeFilm(Long id, Long userId) {
         Film film = filmStorage.findFilmById(id);
-        User user = userStorage.findUserById(userId);
-        film.getLikes().remove(user.getId());
-        filmStorage.update(film);
-        feedDbStorage.addLike(userId, REMOVE, id);
+        if (!userStorage.containsIdUser(userId)) {
+            throw new UserNotFoundException(userId + " id - user not found");
+        }
+        if (likesDbStorage.removeLike(id, userId)) {
+            film.getLikes().remove(userId);
+            filmCache.invalidate(id);
+            outboxRelay.append(LIKE, REMOVE, userId, id);
+        }
         return film;
     }
 
@@ -149,9 +202,13 @@ public class FilmService {
      * @see Film
      */
     public List<Film> getCommonFilms(Long userId, Long friendId) {
-        User user = userStorage.findUserById(userId);
-        User friend = userStorage.findUserById(friendId);
-        return filmStorage.getCommonFilms(user.getId(), friend.getId());
+        if (!userStorage.containsIdUser(userId)) {
+            throw new UserNotFoundException(userId + " id - user not found");
+        }
+        if (!userStorage.containsIdUser(friendId)) {
+            throw new UserNotFoundException(friendId + " id - user not found");
+        }
+        return filmStorage.getCommonFilms(userId, friendId);
     }
 
     /**
@@ -167,6 +224,18 @@ public class FilmService {
         return filmStorage.searchFilms(text, searchParams);
     }
 
+    /**
+     * Suggest films and directors for the typed prefix without loading the films
+     *
+     * @param prefix the beginning of the title or name, or of one of its words
+     * @param limit  maximum number of suggestions
+     * @return List of Suggestion ordered by popularity
+     * @see Suggestion
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        return filmSearchIndex.suggest(prefix, limit);
+    }
+
     /**
      * Find movies of given director, sorted by years or likes
      *
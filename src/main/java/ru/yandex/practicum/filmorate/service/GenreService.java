@@ -3,7 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Genre;
-import ru.yandex.practicum.filmorate.storage.impl.GenreDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.util.List;
 
@@ -11,12 +11,12 @@ import java.util.List;
  * This class helps lever GenreController translated user's request for Genre objects to inner layer of storage,
  * preventing direct access of controllers to storage and adding some business logic if needed
  *
- * @see GenreDbStorageImpl
+ * @see ReferenceDataCache
  */
 @Service
 @RequiredArgsConstructor
 public class GenreService {
-    private final GenreDbStorageImpl genreDbStorage;
+    private final ReferenceDataCache referenceDataCache;
 
     /**
      * Find all genres in storage
@@ -25,7 +25,7 @@ public class GenreService {
      * @see Genre
      */
     public List<Genre> findAll() {
-        return genreDbStorage.findAll();
+        return referenceDataCache.findAllGenres();
     }
 
     /**
@@ -36,6 +36,6 @@ public class GenreService {
      * @see Genre
      */
     public Genre findGenreById(Long genreID) {
-        return genreDbStorage.findGenreById(genreID);
+        return referenceDataCache.findGenreById(genreID);
     }
 }
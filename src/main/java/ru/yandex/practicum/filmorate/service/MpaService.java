@@ -3,7 +3,7 @@ package ru.yandex.practicum.filmorate.service;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Mpa;
-import ru.yandex.practicum.filmorate.storage.impl.MpaDBStorageImpl;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.util.List;
 
@@ -11,13 +11,13 @@ import java.util.List;
  * This class helps lever MpaController translated user's request for Mpa objects to inner layer of storage,
  * preventing direct access of controllers to storage and adding some business logic if needed
  *
- * @see MpaDBStorageImpl
+ * @see ReferenceDataCache
  */
 
 @Service
 @RequiredArgsConstructor
 public class MpaService {
-    private final MpaDBStorageImpl mpaDBStorage;
+    private final ReferenceDataCache referenceDataCache;
 
     /**
      * Find all Mpa in storage
@@ -26,7 +26,7 @@ public class MpaService {
      * @see Mpa
      */
     public List<Mpa> findAll() {
-        return mpaDBStorage.findAll();
+        return referenceDataCache.findAllMpa();
     }
 
     /**
@@ -37,6 +37,6 @@ public class MpaService {
      * @see Mpa
      */
     public Mpa findMpaById(Long mpaId) {
-        return mpaDBStorage.findMpaById(mpaId);
+        return referenceDataCache.findMpaById(mpaId);
     }
 }
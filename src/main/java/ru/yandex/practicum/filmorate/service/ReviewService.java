@@ -2,15 +2,18 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
 import ru.yandex.practicum.filmorate.exception.NoSuchIdException;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.impl.*;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay;
 
 import java.util.List;
-import java.util.stream.Collectors;
 
+import static ru.yandex.practicum.filmorate.model.feedEnum.EventType.REVIEW;
 import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.*;
 
 /**
@@ -32,21 +35,22 @@ public class ReviewService {
      */
     private final FilmDbStorageImpl filmDbStorage;
     /**
-     * @see FeedDbStorageImpl
+     * @see OutboxRelay
      */
-    private final FeedDbStorageImpl feedDbStorage;
+    private final OutboxRelay outboxRelay;
 
     /**
-     * Add review to storage. To feedStorage added an entity about event.
+     * Add review to storage. The event is recorded in the outbox in the same transaction.
      *
      * @param review the specified as Review object without identifier to be saved in the storage
      * @return the review as Review object saved in storage with unique identifier
      * @throws UserNotFoundException if the user not found in the storage by ID
      * @throws FilmNotFoundException if the film not found in the storage by ID
      * @see Review
-     * @see FeedDbStorageImpl
+     * @see OutboxRelay
      * @see ReviewDbStorageImpl
      */
+    @Transactional
     public Review add(Review review) {
         if (!userDbStorage.containsIdUser(review.getUserId())) {
             throw new UserNotFoundException(review.getUserId() + " id - user not found");
@@ -55,30 +59,30 @@ public class ReviewService {
             throw new FilmNotFoundException(review.getFilmId() + " id - film not found");
         }
         Review resultReview = reviewDbStorage.add(review);
-        feedDbStorage.addReview(review.getUserId(), ADD, review.getReviewId());
+        outboxRelay.append(REVIEW, ADD, review.getUserId(), review.getReviewId());
         return resultReview;
     }
 
     /**
-     * Update review in storage. To feedStorage added an entity about event.
+     * Update review in storage. The event is recorded in the outbox in the same transaction.
      *
      * @param review the specified as Review object with identifier to be updated in the storage
      *               will be updated only review content and review type
      * @return the review as Review object updated in the storage
      * @throws NoSuchIdException if the review not found in the storage by ID
      * @see Review
-     * @see FeedDbStorageImpl
+     * @see OutboxRelay
      * @see ReviewDbStorageImpl
      */
+    @Transactional
     public Review update(Review review) {
         if (review.getReviewId() == null) return add(review);
-        if (!reviewDbStorage.containsIdReview(review.getReviewId())) {
-            throw new NoSuchIdException("Отзыв по ID = " + review.getReviewId() + " не найден");
-        }
-        review.setFilmId(reviewDbStorage.get(review.getReviewId()).getFilmId());
-        review.setUserId(reviewDbStorage.get(review.getReviewId()).getUserId());
+        Review savedReview = reviewDbStorage.get(review.getReviewId());
+        review.setFilmId(savedReview.getFilmId());
+        review.setUserId(savedReview.getUserId());
+        review.setUseful(savedReview.getUseful());
         Review resultReview = reviewDbStorage.update(review);
-        feedDbStorage.addReview(review.getUserId(), UPDATE, review.getReviewId());
+        outboxRelay.append(REVIEW, UPDATE, review.getUserId(), review.getReviewId());
         return resultReview;
     }
 
@@ -91,54 +95,64 @@ public class ReviewService {
      * @see Review
      */
     public Review get(Long reviewId) {
-        if (!reviewDbStorage.containsIdReview(reviewId)) {
-            throw new NoSuchIdException("Отзыв по ID = " + reviewId + " не найден");
-        }
         return reviewDbStorage.get(reviewId);
     }
 
     /**
-     * Delete review from the storage. To feedStorage added an entity about event.
+     * Delete review from the storage. The event is recorded in the outbox in the same transaction.
      *
      * @param reviewId the specified as identifier of review to remove from the storage
      * @return the review as Review object removed from storage with identifier equals reviewId
      * @throws NoSuchIdException if the review not found in the storage by ID
      * @see Review
-     * @see FeedDbStorageImpl
+     * @see OutboxRelay
      * @see ReviewDbStorageImpl
      */
+    @Transactional
     public Review delete(Long reviewId) {
-        if (!reviewDbStorage.containsIdReview(reviewId)) {
-            throw new NoSuchIdException("Отзыв по ID = " + reviewId + " не найден");
-        }
         Review resultReview = reviewDbStorage.delete(reviewId);
-        feedDbStorage.addReview(resultReview.getUserId(), REMOVE, resultReview.getReviewId());
+        outboxRelay.append(REVIEW, REMOVE, resultReview.getUserId(), resultReview.getReviewId());
         return resultReview;
     }
 
     /**
      * Returns as many reviews as specified in the query by count by film id.
      * If no film is specified returns as many reviews as specified in the query by count.
+     * Reviews are ordered by usefulness, then by identifier, the next page starts after
+     * the position of the last review of the previous one.
      *
      * @param filmId the specified as identifier of film
      * @param count  is the amount of reviews returned
+     * @param after  the position of the last review of the previous page as "useful,reviewId", may be null
      * @return a List containing the reviews
      * @throws FilmNotFoundException if the film not found in the storage by ID
+     * @throws ValidationException   if the position is malformed
      * @see Review
      * @see ReviewDbStorageImpl
      */
-    public List<Review> getAll(Long filmId, Integer count) {
-        if (filmId == null) return reviewDbStorage.getAll(count).stream()
-                .map(this::get)
-                .collect(Collectors.toList());
+    public List<Review> getAll(Long filmId, Integer count, String after) {
+        Integer afterUseful = null;
+        Long afterId = null;
+        if (after != null) {
+            String[] position = after.split(",");
+            try {
+                if (position.length != 2) {
+                    throw new NumberFormatException();
+                }
+                afterUseful = Integer.valueOf(position[0].trim());
+                afterId = Long.valueOf(position[1].trim());
+            } catch (NumberFormatException e) {
+                throw new ValidationException("after must be useful,reviewId");
+            }
+        }
+
+        if (filmId == null) return reviewDbStorage.getAll(count, afterUseful, afterId);
 
         if (!filmDbStorage.containsIdFilm(filmId)) {
             throw new FilmNotFoundException(filmId + " id - film not found");
         }
 
-        return reviewDbStorage.getAllByFilmId(filmId, count).stream()
-                .map(this::get)
-                .collect(Collectors.toList());
+        return reviewDbStorage.getAllByFilmId(filmId, count, afterUseful, afterId);
     }
 
     /**
@@ -2,17 +2,30 @@ package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FriendSuggestion;
+import ru.yandex.practicum.filmorate.model.Separation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
 import ru.yandex.practicum.filmorate.storage.impl.FriendsStorageImpl;
+import ru.yandex.practicum.filmorate.storage.index.SocialGraph;
+import ru.yandex.practicum.filmorate.storage.index.TimelineIndex;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static ru.yandex.practicum.filmorate.model.feedEnum.EventType.FRIEND;
 import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.ADD;
 import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.REMOVE;
 
@@ -22,6 +35,31 @@ import static ru.yandex.practicum.filmorate.model.feedEnum.OperationType.REMOVE;
 @Service
 @RequiredArgsConstructor
 public class UserService {
+    /**
+     * number of users in the page when the limit is not specified
+     */
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    /**
+     * the largest number of users in one page
+     */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * number of events in the page of feed when the limit is not specified
+     */
+    public static final int DEFAULT_FEED_PAGE_SIZE = 100;
+
+    /**
+     * the largest number of events in one page of feed or timeline
+     */
+    public static final int MAX_FEED_PAGE_SIZE = 1000;
+
+    /**
+     * the longest chain of friendships looked for by {@link #separation(Long, Long, int)}
+     */
+    public static final int MAX_SEPARATION_DEPTH = 6;
+
     /**
      * @see UserStorage
      */
@@ -34,6 +72,22 @@ public class UserService {
      * @see FriendsStorageImpl
      */
     private final FriendsStorageImpl friendsStorage;
+    /**
+     * @see SocialGraph
+     */
+    private final SocialGraph socialGraph;
+    /**
+     * @see FeedStreamService
+     */
+    private final FeedStreamService feedStreamService;
+    /**
+     * @see OutboxRelay
+     */
+    private final OutboxRelay outboxRelay;
+    /**
+     * @see TimelineIndex
+     */
+    private final TimelineIndex timelineIndex;
 
 
     /**
@@ -47,6 +101,28 @@ public class UserService {
         return userStorage.findAll();
     }
 
+    /**
+     * Find one page of users in storage ordered by identifier
+     *
+     * @param after identifier of the last user of the previous page, if absent then the first page
+     * @param limit maximum number of users in the page, if absent then {@value #DEFAULT_PAGE_SIZE}
+     * @return List of User with identifiers greater than after
+     * @see User
+     */
+    public List<User> findPage(Long after, Integer limit) {
+        return userStorage.findPage(after == null ? 0L : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+    }
+
+    /**
+     * Pass all users in storage to the consumer chunk by chunk without loading them at once
+     *
+     * @param consumer receiver of the chunks of users ordered by identifier
+     * @see User
+     */
+    public void streamAll(Consumer<List<User>> consumer) {
+        userStorage.streamAll(consumer);
+    }
+
     /**
      * Add user to storage
      *
@@ -96,42 +172,49 @@ public class UserService {
     }
 
     /**
-     * User add friend. To feedStorage added an entity about event.
+     * User add friend. If the friend was not added before, the event is recorded in the outbox
+     * in the same transaction.
      *
      * @param id       the specified as identifier of user, which want to add a friend
      * @param friendId the specified as identifier of user, which added to the friends of user
      * @return the user as User object from storage with identifier equals id
      * @see User
-     * @see UserStorage
-     * @see FeedDbStorageImpl
+     * @see FriendsStorageImpl#addFriend(Long, Long)
+     * @see OutboxRelay
      */
+    @Transactional
     public User friendAdd(Long id, Long friendId) {
         User user = userStorage.findUserById(id);
-        userStorage.findUserById(friendId); // validate friend
-        user.getFriends().add(friendId);
-        if (!friendsStorage.containsFriend(id, friendId)) {
-            userStorage.update(user);
-            feedDbStorage.addFriend(id, ADD, friendId);
-        } else userStorage.update(user);
+        if (!userStorage.containsIdUser(friendId)) {
+            throw new UserNotFoundException(friendId + " id - user not found");
+        }
+        if (friendsStorage.addFriend(id, friendId)) {
+            user.getFriends().add(friendId);
+            outboxRelay.append(FRIEND, ADD, id, friendId);
+        }
         return user;
     }
 
     /**
-     * User delete friend. To feedStorage added an entity about event.
+     * User delete friend. If the friend was removed, the event is recorded in the outbox in the same transaction.
      *
      * @param id       the specified as identifier of user, which want to delete a friend
      * @param friendId the specified as identifier of user, which deleted from the friends of user
      * @return the user as User object from storage with identifier equals id
      * @see User,
-     * @see UserStorage
-     * @see FeedDbStorageImpl
+     * @see FriendsStorageImpl#removeFriend(Long, Long)
+     * @see OutboxRelay
      */
+    @Transactional
     public User friendDelete(Long id, Long friendId) {
         User user = userStorage.findUserById(id);
-        userStorage.findUserById(friendId); // validate friend
-        user.getFriends().remove(friendId);
-        userStorage.update(user);
-        feedDbStorage.addFriend(id, REMOVE, friendId);
+        if (!userStorage.containsIdUser(friendId)) {
+            throw new UserNotFoundException(friendId + " id - user not found");
+        }
+        if (friendsStorage.removeFriend(id, friendId)) {
+            user.getFriends().remove(friendId);
+            outboxRelay.append(FRIEND, REMOVE, id, friendId);
+        }
         return user;
     }
 
@@ -145,44 +228,136 @@ public class UserService {
      * @see UserStorage
      */
     public List<User> allMyFriends(Long id) {
-        User user = userStorage.findUserById(id);
-        if (user == null) {
-            throw new UserNotFoundException("Пользователь по ID = " + user.getId() + " не найден");
+        if (!userStorage.containsIdUser(id)) {
+            throw new UserNotFoundException(id + " id - user not found");
         }
         return userStorage.allMyFriends(id);
     }
 
     /**
-     * Returns a common friends of two users.
+     * Returns a common friends of two users, intersected in the social graph.
      *
      * @param id      the specified as identifier of first user
      * @param otherId the specified as identifier of second user
-     * @return a List containing the common friends as User Objects
+     * @return a List containing the common friends as User Objects ordered by identifier
+     * @throws UserNotFoundException if one of the users not found in the storage by ID
      * @see User
+     * @see SocialGraph#mutualFriends(Long, Long)
      */
     public List<User> commonFriends(Long id, Long otherId) {
-        List<User> myFriends = allMyFriends(id);
-        List<User> otherFriends = allMyFriends(otherId);
+        checkUser(id);
+        checkUser(otherId);
+        return userStorage.findUsersByIds(socialGraph.mutualFriends(id, otherId));
+    }
+
+    /**
+     * Suggests friends of the user's friends ranked by the number of mutual friends.
+     *
+     * @param id    the specified as identifier of user
+     * @param limit maximum number of suggestions
+     * @return a List of FriendSuggestion, the one with the most mutual friends first
+     * @throws UserNotFoundException if the user not found in the storage by ID
+     * @throws ValidationException   if the limit is not positive
+     * @see FriendSuggestion
+     * @see SocialGraph#suggestFriends(Long, int)
+     */
+    public List<FriendSuggestion> suggestFriends(Long id, int limit) {
+        if (limit < 1) {
+            throw new ValidationException("limit must be positive");
+        }
+        checkUser(id);
+        Map<Long, Integer> mutual = socialGraph.suggestFriends(id, limit);
+        Map<Long, User> users = userStorage.findUsersByIds(new ArrayList<>(mutual.keySet())).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return mutual.entrySet().stream()
+                .filter(entry -> users.containsKey(entry.getKey()))
+                .map(entry -> FriendSuggestion.builder()
+                        .user(users.get(entry.getKey()))
+                        .mutualFriends(entry.getValue())
+                        .build())
+                .collect(Collectors.toList());
+    }
 
-        return myFriends.stream().filter(otherFriends::contains).collect(Collectors.toList());
+    /**
+     * Finds the shortest chain of friendships from one user to another.
+     *
+     * @param id       the specified as identifier of user where the chain starts
+     * @param otherId  the specified as identifier of user where the chain ends
+     * @param maxDepth the longest chain to look for, from 1 to {@value #MAX_SEPARATION_DEPTH}
+     * @return Separation with the number of friendships in the chain, without it if there is no such chain
+     * @throws UserNotFoundException if one of the users not found in the storage by ID
+     * @throws ValidationException   if maxDepth is out of range
+     * @see Separation
+     * @see SocialGraph#degreeOfSeparation(Long, Long, int)
+     */
+    public Separation separation(Long id, Long otherId, int maxDepth) {
+        if (maxDepth < 1 || maxDepth > MAX_SEPARATION_DEPTH) {
+            throw new ValidationException("maxDepth must be from 1 to " + MAX_SEPARATION_DEPTH);
+        }
+        checkUser(id);
+        checkUser(otherId);
+        return Separation.builder()
+                .userId(id)
+                .otherId(otherId)
+                .degree(socialGraph.degreeOfSeparation(id, otherId, maxDepth))
+                .build();
     }
 
     /**
-     * Returns the events by user
+     * Returns one page of the events by user in ascending order of identifiers.
+     * The page starts right after afterEventId if it is given, otherwise the page ends right before beforeEventId,
+     * without cursors the page holds the newest events
      *
-     * @param id the specified as identifier of user
+     * @param id            the specified as identifier of user
+     * @param afterEventId  identifier of the event the page starts after, may be null
+     * @param beforeEventId identifier of the event the page ends before, may be null
+     * @param limit         maximum number of events in the page, if absent then {@value #DEFAULT_FEED_PAGE_SIZE}
      * @return a List containing the events by user as Feed Objects
      * @throws UserNotFoundException if the user not found in the storage by ID
      * @see Feed
      */
-    public List<Feed> feed(Long id) {
-        if (!userStorage.containsIdUser(id)) {
-            throw new UserNotFoundException(id + " id - user not found");
-        }
-        return feedDbStorage.get(id);
+    public List<Feed> feed(Long id, Long afterEventId, Long beforeEventId, Integer limit) {
+        checkUser(id);
+        return feedDbStorage.get(id, afterEventId, beforeEventId, limit == null ? DEFAULT_FEED_PAGE_SIZE : limit);
+    }
+
+    /**
+     * Returns one page of the timeline of what friends of the user did, the newest events first
+     *
+     * @param id            the specified as identifier of user
+     * @param beforeEventId identifier of the event the page ends before, if absent then the newest events
+     * @param limit         maximum number of events in the page, if absent then {@value #DEFAULT_FEED_PAGE_SIZE}
+     * @return a List containing the events by friends of the user as Feed Objects
+     * @throws UserNotFoundException if the user not found in the storage by ID
+     * @see TimelineIndex
+     */
+    public List<Feed> timeline(Long id, Long beforeEventId, Integer limit) {
+        checkUser(id);
+        return feedDbStorage.getAllByIds(timelineIndex.eventIds(id, beforeEventId,
+                limit == null ? DEFAULT_FEED_PAGE_SIZE : limit));
+    }
+
+    /**
+     * Opens a stream of new events by user
+     *
+     * @param id           the specified as identifier of user
+     * @param afterEventId identifier of the last event known to the client, may be null
+     * @return the emitter of server-sent events
+     * @throws UserNotFoundException if the user not found in the storage by ID
+     * @see FeedStreamService
+     */
+    public SseEmitter feedStream(Long id, Long afterEventId) {
+        checkUser(id);
+        return feedStreamService.subscribe(id, afterEventId);
     }
 
     public List<Film> recommendations (Long id) {
         return userStorage.recommendations(id);
     }
+
+    private void checkUser(Long id) {
+        if (!userStorage.containsIdUser(id)) {
+            throw new UserNotFoundException(id + " id - user not found");
+        }
+    }
 }
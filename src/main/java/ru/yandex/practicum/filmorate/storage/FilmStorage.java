@@ -6,17 +6,24 @@ import ru.yandex.practicum.filmorate.model.SortParam;
 
 import java.util.EnumSet;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface FilmStorage {
 
     List<Film> findAll();
 
+    List<Film> findPage(Long after, int limit);
+
+    void streamAll(Consumer<List<Film>> consumer);
+
     Film create(Film film);
 
     Film update(Film film);
 
     Film findFilmById(Long filmId);
 
+    List<Film> findFilmsByIds(List<Long> ids);
+
     Film deleteFilmById(Long filmId);
 
     List<Film> getPopularFilms(int count, Integer genreId, Integer year);
@@ -13,9 +13,9 @@ public interface ReviewStorage {
 
     Review delete(Long reviewId);
 
-    List<Long> getAllByFilmId(Long filmId, Integer count);
+    List<Review> getAllByFilmId(Long filmId, Integer count, Integer afterUseful, Long afterId);
 
-    List<Long> getAll(Integer count);
+    List<Review> getAll(Integer count, Integer afterUseful, Long afterId);
 
     Boolean containsIdReview(Long reviewId);
 
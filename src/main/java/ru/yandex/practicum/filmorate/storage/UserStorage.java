@@ -4,10 +4,15 @@ import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface UserStorage {
     List<User> findAll();
 
+    List<User> findPage(Long after, int limit);
+
+    void streamAll(Consumer<List<User>> consumer);
+
     User create(User user);
 
     User update(User user);
@@ -18,6 +23,8 @@ public interface UserStorage {
 
     List<User> allMyFriends(Long id);
 
+    List<User> findUsersByIds(List<Long> ids);
+
     Boolean containsIdUser(Long userId);
 
     List<Film> recommendations (Long id);
@@ -0,0 +1,192 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.storage.impl.FilmDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Read-through cache of hydrated films with likes, genres and directors.
+ * Eviction is W-TinyLFU bounded by weight, where a film weighs one plus the size of its collections.
+ * Callers always get a copy, so changes of a returned film never reach the cache.
+ * The storages invalidate a film when it, its genres or its directors change,
+ * a film is invalidated by the film service when its likes change
+ * and once more by the committed change of likes received from the outbox.
+ * When the change is made in a transaction the film is invalidated once more after commit,
+ * so a concurrent reader can not put back the state seen before commit.
+ * The cache is switched off by {@code filmorate.cache.films.enabled=false}.
+ *
+ * @see FilmDbStorageImpl
+ */
+@Slf4j
+@Component
+public class FilmCache implements OutboxSubscriber {
+
+    private final Cache<Long, Film> cache;
+
+    public FilmCache(@Value("${filmorate.cache.films.enabled:true}") boolean enabled,
+                     @Value("${filmorate.cache.films.maximum-weight:100000}") long maximumWeight,
+                     MeterRegistry meterRegistry) {
+        if (enabled) {
+            cache = Caffeine.newBuilder()
+                    .maximumWeight(maximumWeight)
+                    .weigher(FilmCache::weigh)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "films");
+        } else {
+            cache = null;
+            log.info("film cache is disabled");
+        }
+    }
+
+    /**
+     * Returns the cached film or loads it
+     *
+     * @param filmId identifier of the film
+     * @param loader loads the film on a miss, its exceptions are passed to the caller
+     * @return copy of the film
+     */
+    public Film get(Long filmId, Function<Long, Film> loader) {
+        if (cache == null) {
+            return loader.apply(filmId);
+        }
+        return copyOf(cache.get(filmId, loader));
+    }
+
+    /**
+     * Returns the cached films and loads all missing ones at once
+     *
+     * @param filmIds identifiers of the films
+     * @param loader  loads the missing films, unknown identifiers are absent in the returned map
+     * @return copies of the films in the same order as identifiers, unknown identifiers are skipped
+     */
+    public List<Film> getAll(List<Long> filmIds, Function<List<Long>, Map<Long, Film>> loader) {
+        Map<Long, Film> films = cache == null
+                ? loader.apply(filmIds)
+                : cache.getAll(filmIds, ids -> {
+                    List<Long> missing = new ArrayList<>();
+                    ids.forEach(missing::add);
+                    return loader.apply(missing);
+                });
+        List<Film> result = new ArrayList<>(filmIds.size());
+        for (Long filmId : filmIds) {
+            Film film = films.get(filmId);
+            if (film != null) {
+                result.add(cache == null ? film : copyOf(film));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops the film after a committed like or removal of like
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() != EventType.LIKE) {
+            return;
+        }
+        invalidate(event.getEntityId());
+    }
+
+    /**
+     * Drops the film from the cache
+     *
+     * @param filmId identifier of changed film
+     */
+    public void invalidate(Long filmId) {
+        if (cache == null) {
+            return;
+        }
+        cache.invalidate(filmId);
+        afterCommit(() -> cache.invalidate(filmId));
+    }
+
+    /**
+     * Drops the films from the cache
+     *
+     * @param filmIds identifiers of changed films
+     */
+    public void invalidateAll(Collection<Long> filmIds) {
+        if (cache == null) {
+            return;
+        }
+        cache.invalidateAll(filmIds);
+        afterCommit(() -> cache.invalidateAll(filmIds));
+    }
+
+    /**
+     * Drops cached films matching the condition, e.g. films of a changed director
+     *
+     * @param condition the condition on cached film
+     */
+    public void invalidateIf(Predicate<Film> condition) {
+        if (cache == null) {
+            return;
+        }
+        List<Long> ids = cache.asMap().values().stream()
+                .filter(condition)
+                .map(Film::getId)
+                .collect(Collectors.toList());
+        invalidateAll(ids);
+    }
+
+    /**
+     * Drops all films from the cache
+     */
+    public void invalidateAll() {
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    private static int weigh(Long filmId, Film film) {
+        return 1 + sizeOf(film.getLikes()) + sizeOf(film.getGenres()) + sizeOf(film.getDirectors());
+    }
+
+    private static int sizeOf(Collection<?> collection) {
+        return collection == null ? 0 : collection.size();
+    }
+
+    private static Film copyOf(Film film) {
+        return film.toBuilder()
+                .likes(film.getLikes() == null ? null : new HashSet<>(film.getLikes()))
+                .genres(film.getGenres() == null ? null : new TreeSet<>(film.getGenres()))
+                .directors(film.getDirectors() == null ? null : new HashSet<>(film.getDirectors()))
+                .build();
+    }
+}
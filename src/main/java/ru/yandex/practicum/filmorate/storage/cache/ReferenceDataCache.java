@@ -0,0 +1,109 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.GenreNotFoundException;
+import ru.yandex.practicum.filmorate.exception.NoSuchIdException;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.impl.GenreDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.MpaDBStorageImpl;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * In-memory cache of reference data: genres and MPA ratings.
+ * The data is loaded once on start into an immutable snapshot with arrays indexed by identifier,
+ * so lookups need no SQL and no locking. An explicit {@link #refresh()} replaces the whole snapshot.
+ * Returned objects are shared by all callers and must not be changed.
+ *
+ * @see GenreDbStorageImpl
+ * @see MpaDBStorageImpl
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ReferenceDataCache {
+
+    private final GenreDbStorageImpl genreDbStorage;
+
+    private final MpaDBStorageImpl mpaDBStorage;
+
+    private volatile Snapshot snapshot;
+
+    /**
+     * Loads genres and MPA ratings from the database and replaces the cached ones
+     */
+    @PostConstruct
+    public void refresh() {
+        snapshot = new Snapshot(genreDbStorage.findAll(), mpaDBStorage.findAll());
+        log.info("reference data loaded: {} genres, {} mpa ratings",
+                snapshot.genreList.size(), snapshot.mpaList.size());
+    }
+
+    /**
+     * @return unmodifiable List of all Genre ordered by identifier
+     * @see Genre
+     */
+    public List<Genre> findAllGenres() {
+        return snapshot.genreList;
+    }
+
+    /**
+     * @param genreId the specified as identifier of the genre
+     * @return Genre
+     * @throws GenreNotFoundException if there is no genre with this identifier
+     * @see Genre
+     */
+    public Genre findGenreById(long genreId) {
+        Genre[] genres = snapshot.genres;
+        if (genreId < 0 || genreId >= genres.length || genres[(int) genreId] == null) {
+            throw new GenreNotFoundException(genreId + " id - genre not found");
+        }
+        return genres[(int) genreId];
+    }
+
+    /**
+     * @return unmodifiable List of all Mpa ordered by identifier
+     * @see Mpa
+     */
+    public List<Mpa> findAllMpa() {
+        return snapshot.mpaList;
+    }
+
+    /**
+     * @param mpaId the specified as identifier of the mpa rating
+     * @return the MPA rating as Mpa Object
+     * @throws NoSuchIdException if there is no mpa rating with this identifier
+     * @see Mpa
+     */
+    public Mpa findMpaById(long mpaId) {
+        Mpa[] mpas = snapshot.mpas;
+        if (mpaId < 0 || mpaId >= mpas.length || mpas[(int) mpaId] == null) {
+            throw new NoSuchIdException(mpaId + " id - mpa not found");
+        }
+        return mpas[(int) mpaId];
+    }
+
+    /**
+     * Reference data as it was loaded at one moment
+     */
+    private static final class Snapshot {
+        private final List<Genre> genreList;
+        private final Genre[] genres;
+        private final List<Mpa> mpaList;
+        private final Mpa[] mpas;
+
+        private Snapshot(List<Genre> genreList, List<Mpa> mpaList) {
+            this.genreList = Collections.unmodifiableList(genreList);
+            this.genres = new Genre[genreList.stream().mapToInt(Genre::getId).max().orElse(-1) + 1];
+            genreList.forEach(genre -> genres[genre.getId()] = genre);
+            this.mpaList = Collections.unmodifiableList(mpaList);
+            this.mpas = new Mpa[mpaList.stream().mapToInt(Mpa::getId).max().orElse(-1) + 1];
+            mpaList.forEach(mpa -> mpas[mpa.getId()] = mpa);
+        }
+    }
+}
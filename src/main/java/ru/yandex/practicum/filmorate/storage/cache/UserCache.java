@@ -0,0 +1,294 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.impl.UserDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.index.SortedLongArrays;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Cache of users for the validation lookups made before almost every request.
+ * Identifiers of all existing users are kept in a compressed bitmap loaded on start,
+ * so an existence check never goes to the database.
+ * Users themselves are kept in a read-through Caffeine cache bounded by size,
+ * friends of a cached user are held as a sorted array of identifiers instead of a set of boxed values.
+ * Callers always get a new User object.
+ * The storages update the identifiers and invalidate a user when its data change,
+ * when the change is made in a transaction the user is invalidated once more after commit.
+ * Friends of a cached user are updated in place by committed changes of one friendship received from the outbox.
+ * The user cache is switched off by {@code filmorate.cache.users.enabled=false},
+ * existence checks are answered from memory anyway.
+ *
+ * @see UserDbStorageImpl
+ * @see FilmCache
+ * @see ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay
+ */
+@Slf4j
+@Component
+public class UserCache implements OutboxSubscriber {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final Cache<Long, CachedUser> cache;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Roaring64NavigableMap userIds = new Roaring64NavigableMap(false, false);
+
+    public UserCache(JdbcTemplate jdbcTemplate,
+                     @Value("${filmorate.cache.users.enabled:true}") boolean enabled,
+                     @Value("${filmorate.cache.users.maximum-size:100000}") long maximumSize,
+                     MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        if (enabled) {
+            cache = Caffeine.newBuilder()
+                    .maximumSize(maximumSize)
+                    .recordStats()
+                    .build();
+            CaffeineCacheMetrics.monitor(meterRegistry, cache, "users");
+        } else {
+            cache = null;
+            log.info("user cache is disabled");
+        }
+    }
+
+    /**
+     * Loads identifiers of all users from the database
+     */
+    @PostConstruct
+    public void rebuild() {
+        Roaring64NavigableMap ids = new Roaring64NavigableMap(false, false);
+        jdbcTemplate.query("SELECT user_id FROM users", rs -> {
+            ids.addLong(rs.getLong("user_id"));
+        });
+        ids.runOptimize();
+        lock.writeLock().lock();
+        try {
+            userIds.clear();
+            userIds.or(ids);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("user identifiers loaded: {} users", ids.getLongCardinality());
+    }
+
+    /**
+     * @param userId identifier of the user
+     * @return true if the user exists
+     */
+    public boolean contains(Long userId) {
+        lock.readLock().lock();
+        try {
+            return userId != null && userIds.contains(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the cached user or loads it
+     *
+     * @param userId identifier of the user
+     * @param loader loads the user with friends on a miss, its exceptions are passed to the caller
+     * @return new User object with friends
+     */
+    public User get(Long userId, Function<Long, User> loader) {
+        if (cache == null) {
+            return loader.apply(userId);
+        }
+        return cache.get(userId, id -> CachedUser.of(loader.apply(id))).toUser();
+    }
+
+    /**
+     * Registers identifier of created user
+     *
+     * @param userId identifier of the created user
+     */
+    public void onUserCreated(Long userId) {
+        lock.writeLock().lock();
+        try {
+            userIds.addLong(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the user from the cache after change of its data
+     *
+     * @param userId identifier of changed user
+     */
+    public void invalidate(Long userId) {
+        if (cache == null) {
+            return;
+        }
+        cache.invalidate(userId);
+        afterCommit(() -> cache.invalidate(userId));
+    }
+
+    /**
+     * Applies a committed change of friendship to the cached user
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() != EventType.FRIEND) {
+            return;
+        }
+        if (event.getOperation() == OperationType.ADD) {
+            onFriendAdded(event.getUserId(), event.getEntityId());
+        } else {
+            onFriendRemoved(event.getUserId(), event.getEntityId());
+        }
+    }
+
+    /**
+     * Adds the friend to the cached user, if the user is not cached nothing is done
+     *
+     * @param userId   identifier of the user
+     * @param friendId identifier of the added friend
+     */
+    public void onFriendAdded(Long userId, Long friendId) {
+        if (cache == null) {
+            return;
+        }
+        cache.asMap().computeIfPresent(userId, (id, user) -> user.withFriend(friendId));
+    }
+
+    /**
+     * Removes the friend from the cached user, if the user is not cached nothing is done
+     *
+     * @param userId   identifier of the user
+     * @param friendId identifier of the removed friend
+     */
+    public void onFriendRemoved(Long userId, Long friendId) {
+        if (cache == null) {
+            return;
+        }
+        cache.asMap().computeIfPresent(userId, (id, user) -> user.withoutFriend(friendId));
+    }
+
+    /**
+     * Forgets the deleted user and drops cached users who had it as a friend,
+     * their friend rows are removed by the database cascade
+     *
+     * @param userId identifier of removed user
+     */
+    public void onUserDeleted(Long userId) {
+        lock.writeLock().lock();
+        try {
+            userIds.removeLong(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (cache == null) {
+            return;
+        }
+        List<Long> ids = cache.asMap().values().stream()
+                .filter(user -> user.id == userId || SortedLongArrays.contains(user.friends, userId))
+                .map(user -> user.id)
+                .collect(Collectors.toList());
+        cache.invalidateAll(ids);
+        afterCommit(() -> cache.invalidateAll(ids));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        }
+    }
+
+    /**
+     * Immutable cached form of the user, friends are a sorted array of identifiers
+     */
+    private static final class CachedUser {
+
+        private final long id;
+
+        private final String email;
+
+        private final String login;
+
+        private final String name;
+
+        private final LocalDate birthday;
+
+        private final long[] friends;
+
+        private CachedUser(CachedUser user, long[] friends) {
+            this.id = user.id;
+            this.email = user.email;
+            this.login = user.login;
+            this.name = user.name;
+            this.birthday = user.birthday;
+            this.friends = friends;
+        }
+
+        private CachedUser(User user) {
+            this.id = user.getId();
+            this.email = user.getEmail();
+            this.login = user.getLogin();
+            this.name = user.getName();
+            this.birthday = user.getBirthday();
+            this.friends = user.getFriends() == null
+                    ? SortedLongArrays.EMPTY
+                    : user.getFriends().stream().mapToLong(Long::longValue).sorted().toArray();
+        }
+
+        private static CachedUser of(User user) {
+            return new CachedUser(user);
+        }
+
+        private CachedUser withFriend(long friendId) {
+            return new CachedUser(this, SortedLongArrays.insert(friends, friendId));
+        }
+
+        private CachedUser withoutFriend(long friendId) {
+            return new CachedUser(this, SortedLongArrays.remove(friends, friendId));
+        }
+
+        private User toUser() {
+            Set<Long> friendSet = new HashSet<>();
+            for (long friendId : friends) {
+                friendSet.add(friendId);
+            }
+            return User.builder()
+                    .id(id)
+                    .email(email)
+                    .login(login)
+                    .name(name)
+                    .birthday(birthday)
+                    .friends(friendSet)
+                    .build();
+        }
+    }
+}
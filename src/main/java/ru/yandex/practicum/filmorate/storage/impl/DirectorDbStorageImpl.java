@@ -2,7 +2,6 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
@@ -12,22 +11,40 @@ import ru.yandex.practicum.filmorate.exception.DirectorNotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Class is provides database functionalities for directors.
+ *
+ * @see FilmSearchIndex
+ * @see FilmCache
  */
 @Primary
 @Component
 @RequiredArgsConstructor
 public class DirectorDbStorageImpl implements DirectorStorage {
+    /**
+     * directors of the films by the array of film identifiers
+     */
+    public static final String FIND_BY_FILM_IDS = "SELECT FILM_DIRECTORS.FILM_ID, DIRECTORS.* FROM FILM_DIRECTORS "
+            + "LEFT JOIN DIRECTORS ON FILM_DIRECTORS.DIRECTOR_ID = DIRECTORS.DIRECTOR_ID WHERE film_id = ANY(?)";
+
     private final JdbcTemplate jdbcTemplate;
 
+    private final FilmSearchIndex searchIndex;
+
+    private final FilmCache filmCache;
+
     /**
      * Query will return all directors from storage
      *
@@ -55,6 +72,7 @@ public class DirectorDbStorageImpl implements DirectorStorage {
                 .addValue("director_name", director.getName());
         Number id = simpleJdbcInsert.executeAndReturnKey(parameter);
         director.setId((Long) id);
+        searchIndex.onDirectorSaved(director);
         return director;
     }
 
@@ -71,6 +89,8 @@ public class DirectorDbStorageImpl implements DirectorStorage {
         String sql = "UPDATE directors SET director_name =? " +
                 "WHERE director_id=?";
         jdbcTemplate.update(sql, director.getName(), director.getId());
+        searchIndex.onDirectorSaved(director);
+        invalidateFilmsOf(director.getId());
         return findDirectorById(director.getId());
     }
 
@@ -85,11 +105,9 @@ public class DirectorDbStorageImpl implements DirectorStorage {
     @Override
     public Director findDirectorById(Long directorId) {
         final String sql = "SELECT * FROM DIRECTORS WHERE director_id=?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::mapRowToDirector, directorId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new DirectorNotFoundException(directorId + " id - director not found");
-        }
+        return jdbcTemplate.query(sql, this::mapRowToDirector, directorId).stream()
+                .findFirst()
+                .orElseThrow(() -> new DirectorNotFoundException(directorId + " id - director not found"));
     }
 
     /**
@@ -104,20 +122,41 @@ public class DirectorDbStorageImpl implements DirectorStorage {
         Director director = findDirectorById(directorId);
         final String sql = "DELETE FROM DIRECTORS WHERE director_id=?";
         jdbcTemplate.update(sql, directorId);
+        searchIndex.onDirectorDeleted(directorId);
+        invalidateFilmsOf(directorId);
         return director;
     }
 
     /**
-     * The query will return all the directors that belong to the given movie
+     * Drops cached films of the director, they hold the name of the director
      *
-     * @param id of the movie by which to find all the directors of this movie
-     * @return Set of Director object
+     * @param directorId the specified as identifier of changed director
+     * @see FilmCache
+     */
+    private void invalidateFilmsOf(Long directorId) {
+        filmCache.invalidateIf(film -> film.getDirectors() != null && film.getDirectors().stream()
+                .anyMatch(director -> directorId.equals(director.getId())));
+    }
+
+    /**
+     * The query will return all the directors that belong to the several movies
+     *
+     * @param ids of the movies by which to find all the directors of these movies
+     * @return a Map where the key is the movie identifier, the value is Set of Director object.
+     * Movies without directors are not present in the map
      * @see Director
      */
-    public Set<Director> getDirectorsByFilmId(Long id) {
-        String sql = "SELECT DIRECTORS.* FROM FILM_DIRECTORS " +
-                "LEFT JOIN DIRECTORS ON FILM_DIRECTORS.DIRECTOR_ID = DIRECTORS.DIRECTOR_ID WHERE film_id=?";
-        return new HashSet<>(jdbcTemplate.query(sql, this::mapRowToDirector, id));
+    public Map<Long, Set<Director>> getDirectorsByFilmIds(Collection<Long> ids) {
+        Map<Long, Set<Director>> directors = new HashMap<>();
+        if (ids.isEmpty()) {
+            return directors;
+        }
+        jdbcTemplate.query(FIND_BY_FILM_IDS, ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())),
+                rs -> {
+                    directors.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>())
+                            .add(mapRowToDirector(rs, rs.getRow()));
+                });
+        return directors;
     }
 
     /**
@@ -2,125 +2,159 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.support.GeneratedKeyHolder;
-import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
 import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
 import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
 import ru.yandex.practicum.filmorate.storage.FeedStorage;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
 
-import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-
-import static ru.yandex.practicum.filmorate.model.feedEnum.EventType.*;
-
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Class is provides database functionalities for feed of events.
+ * Events are appended by the feed writer, every written event is published for the live feed streams.
+ * Changes made by users come from the outbox after commit, the ones left in the outbox by a crash are replayed on start.
+ *
+ * @see FeedWriter
+ * @see ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay
  */
 @Component
 @RequiredArgsConstructor
-public class FeedDbStorageImpl implements FeedStorage {
+public class FeedDbStorageImpl implements FeedStorage, OutboxSubscriber {
+    /**
+     * page of events of the user between the identifiers in ascending order
+     */
+    public static final String FIND_PAGE = "SELECT * FROM feed WHERE user_id = ? AND event_id > ? AND event_id < ? "
+            + "ORDER BY event_id LIMIT ?";
+
+    /**
+     * page of events of the user between the identifiers in descending order
+     */
+    public static final String FIND_PAGE_DESC = "SELECT * FROM feed WHERE user_id = ? AND event_id > ? AND event_id < ? "
+            + "ORDER BY event_id DESC LIMIT ?";
+
+    /**
+     * events by the array of identifiers
+     */
+    public static final String FIND_BY_IDS = "SELECT * FROM feed WHERE event_id = ANY(?)";
+
     /**
      * @see JdbcTemplate
      */
     private final JdbcTemplate jdbcTemplate;
+    /**
+     * @see FeedWriter
+     */
+    private final FeedWriter feedWriter;
 
     /**
-     * Create and add feed of event add/delete like film by user to storage
+     * Add feed of the committed change made by user to storage
      *
-     * @param userId    the specified as user identifier, which were added or deleted a like to the film
-     * @param operation the specified operation (add or delete) which was made by user
-     * @param filmId    the specified as film identifier, which were liked by user
-     * @return the feed as Feed object saved in storage with unique identifier
+     * @param event the committed change
      * @see Feed
      */
-    public Feed addLike(Long userId, OperationType operation, Long filmId) {
-        return add(Feed.builder()
-                .timestamp(new Timestamp(System.currentTimeMillis()).getTime())
-                .userId(userId)
-                .eventType(LIKE)
-                .operation(operation)
-                .entityId(filmId)
-                .build());
+    @Override
+    public void onEvent(OutboxEvent event) {
+        add(toFeed(event));
     }
 
     /**
-     * Create and add feed of event add/update/delete Review by user to storage
+     * Queues feeds of the whole page of committed changes to the writer without waiting,
+     * so the page is written by one batch
      *
-     * @param userId    the specified as user identifier, which were added (deleted or updated) a review
-     * @param operation the specified operation (add, update or delete) which was made by user
-     * @param reviewId  the specified as review identifier, which were added (deleted or updated) by user
-     * @return the feed as Feed object saved in storage with unique identifier
-     * @see Feed
+     * @param events the committed changes in order of identifiers
+     * @return the futures of the feeds, completed when they are written according to the writer mode
+     * @see FeedWriter#appendAsync(Feed)
      */
-    public Feed addReview(Long userId, OperationType operation, Long reviewId) {
-        return add(Feed.builder()
-                .timestamp(new Timestamp(System.currentTimeMillis()).getTime())
-                .userId(userId)
-                .eventType(REVIEW)
-                .operation(operation)
-                .entityId(reviewId)
-                .build());
+    @Override
+    public List<CompletableFuture<?>> onEvents(List<OutboxEvent> events) {
+        List<CompletableFuture<?>> written = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            written.add(feedWriter.appendAsync(toFeed(event)));
+        }
+        return written;
     }
 
     /**
-     * Create and add feed of event add/delete friend by user to storage
-     *
-     * @param userId    the specified as user identifier, which were added or deleted a friend
-     * @param operation the specified operation (add or delete) which was made by user
-     * @param friendId  the specified as user identifier
-     *                  , which were added like a friend or delete from the friends by user
-     * @return the feed as Feed object saved in storage with unique identifier
-     * @see Feed
+     * @return true, feed is kept in the database and must not miss changes left in the outbox
      */
-    public Feed addFriend(Long userId, OperationType operation, Long friendId) {
-        return add(Feed.builder()
-                .timestamp(new Timestamp(System.currentTimeMillis()).getTime())
-                .userId(userId)
-                .eventType(FRIEND)
-                .operation(operation)
-                .entityId(friendId)
-                .build());
+    @Override
+    public boolean replayOnStart() {
+        return true;
     }
 
     /**
      * Add feed of event to storage
      *
      * @param feed the specified as Feed object without identifier to be saved in the storage
-     * @return the feed as Feed object saved in storage with unique identifier
+     * @return the feed as Feed object with unique identifier, written to storage according to the writer mode
      * @see Feed
+     * @see FeedWriter
+     * @see ru.yandex.practicum.filmorate.service.FeedStreamService
      */
     public Feed add(Feed feed) {
-        final String sql = "INSERT INTO feed (event_time, user_id, event_type, operation, entity_id ) "
-                + "VALUES ( ?, ?, ?, ?, ? )";
-        KeyHolder keyHolder = new GeneratedKeyHolder();
-        jdbcTemplate.update(connection -> {
-            PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"event_id"});
-            stmt.setTimestamp(1, new Timestamp(feed.getTimestamp()));
-            stmt.setLong(2, feed.getUserId());
-            stmt.setString(3, feed.getEventType().toString());
-            stmt.setString(4, feed.getOperation().toString());
-            stmt.setLong(5, feed.getEntityId());
-            return stmt;
-        }, keyHolder);
-        return feed;
+        return feedWriter.append(feed);
     }
 
     /**
-     * Returns the events by user
+     * Returns one page of the events by user ordered by identifier of event.
+     * The page is read by a range scan of the (user_id, event_id) index.
+     * When the lower bound is given the page starts right after it, otherwise the page ends right before
+     * the upper bound, so without cursors the page holds the newest events
      *
-     * @param userId the specified as identifier of user
-     * @return a List containing the events by user as Feed Objects
+     * @param userId        the specified as identifier of user
+     * @param afterEventId  the page contains events with greater identifiers, null for no lower bound
+     * @param beforeEventId the page contains events with less identifiers, null for no upper bound
+     * @param limit         maximum number of events in the page
+     * @return a List containing the events by user as Feed Objects in ascending order of identifiers
      * @see Feed
      */
-    public List<Feed> get(Long userId) {
-        final String sql = "SELECT * FROM feed WHERE user_id = ? ORDER BY event_time ASC";
-        return jdbcTemplate.query(sql, this::mapRowToFeed, userId);
+    public List<Feed> get(Long userId, Long afterEventId, Long beforeEventId, int limit) {
+        long after = afterEventId == null ? 0L : afterEventId;
+        long before = beforeEventId == null ? Long.MAX_VALUE : beforeEventId;
+        if (afterEventId == null) {
+            List<Feed> events = jdbcTemplate.query(FIND_PAGE_DESC, this::mapRowToFeed, userId, after, before, limit);
+            Collections.reverse(events);
+            return events;
+        }
+        return jdbcTemplate.query(FIND_PAGE, this::mapRowToFeed, userId, after, before, limit);
+    }
+
+    /**
+     * Returns the events with given identifiers by one query
+     *
+     * @param eventIds the specified as identifiers of events
+     * @return a List containing the found events as Feed Objects in descending order of identifiers,
+     * removed events are skipped
+     * @see Feed
+     */
+    public List<Feed> getAllByIds(List<Long> eventIds) {
+        if (eventIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Feed> events = jdbcTemplate.query(FIND_BY_IDS,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", eventIds.toArray())),
+                this::mapRowToFeed);
+        events.sort(Comparator.comparing(Feed::getEventId).reversed());
+        return events;
+    }
+
+    private Feed toFeed(OutboxEvent event) {
+        return Feed.builder()
+                .timestamp(event.getTimestamp())
+                .userId(event.getUserId())
+                .eventType(event.getEventType())
+                .operation(event.getOperation())
+                .entityId(event.getEntityId())
+                .build();
     }
 
     /**
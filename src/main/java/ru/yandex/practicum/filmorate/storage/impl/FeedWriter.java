@@ -0,0 +1,321 @@
+package ru.yandex.practicum.filmorate.storage.impl;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends events to the FEED table off the request thread.
+ * Events are put to a bounded queue and written by one writer thread with JDBC batch inserts,
+ * a batch takes all events queued while the previous one was written and is flushed in one transaction
+ * as soon as the queue is empty. While more producers keep coming the writer waits for them,
+ * but not longer than the maximum delay since the first event of the batch, so a lone event is written at once.
+ * Events are always written in a new transaction, so the caller may append them after commit of its own one.
+ * Identifiers of events are allocated in memory by an atomic counter,
+ * so the identifier is known to the caller at once and the batch needs no generated keys.
+ * Producers do not lock each other, so events may be queued not in the order of their identifiers,
+ * every batch is sorted by identifier before it is written.
+ * A producer waits while the queue is full. On shutdown the queue is drained before the writer stops,
+ * an event queued after that is written by its producer.
+ * Every written event is published as an application event for the live feed streams.
+ * <ul>
+ * <li>{@link Mode#SYNC} writes the event on the caller thread</li>
+ * <li>{@link Mode#GROUP_COMMIT} queues the event and waits until the batch with it is written</li>
+ * <li>{@link Mode#FIRE_AND_FORGET} queues the event and returns, the event is readable a moment later</li>
+ * </ul>
+ *
+ * @see FeedDbStorageImpl
+ */
+@Slf4j
+@Component
+public class FeedWriter {
+
+    /**
+     * how events are written, set by {@code filmorate.feed.writer.mode}
+     */
+    public enum Mode {
+        SYNC, GROUP_COMMIT, FIRE_AND_FORGET
+    }
+
+    /**
+     * how long the writer waits for an event before it checks for shutdown
+     */
+    private static final long POLL_MILLIS = 200;
+
+    private static final Comparator<Pending> BY_EVENT_ID = Comparator.comparing(pending -> pending.feed.getEventId());
+
+    private static final String INSERT = "INSERT INTO feed (event_id, event_time, user_id, event_type, operation, "
+            + "entity_id) VALUES ( ?, ?, ?, ?, ?, ? )";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Mode mode;
+
+    private final int batchSize;
+
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final Thread writer = new Thread(this::run, "feed-writer");
+
+    private Timer flushTimer;
+
+    private DistributionSummary batchSizes;
+
+    private final AtomicLong lastEventId = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    public FeedWriter(JdbcTemplate jdbcTemplate,
+                      PlatformTransactionManager transactionManager,
+                      ApplicationEventPublisher eventPublisher,
+                      MeterRegistry meterRegistry,
+                      @Value("${filmorate.feed.writer.mode:GROUP_COMMIT}") Mode mode,
+                      @Value("${filmorate.feed.writer.queue-capacity:8192}") int queueCapacity,
+                      @Value("${filmorate.feed.writer.batch-size:256}") int batchSize,
+                      @Value("${filmorate.feed.writer.max-delay-millis:10}") long maxDelayMillis) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.eventPublisher = eventPublisher;
+        this.meterRegistry = meterRegistry;
+        this.mode = mode;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    /**
+     * Continues identifiers after the last stored event, starts the writer thread and registers the metrics
+     */
+    @PostConstruct
+    public void init() {
+        lastEventId.set(jdbcTemplate.queryForObject("SELECT COALESCE(MAX(event_id), 0) FROM feed", Long.class));
+        flushTimer = Timer.builder("filmorate.feed.writer.flush")
+                .description("Time of writing one batch of feed events")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("filmorate.feed.writer.batch")
+                .description("Number of feed events written in one batch")
+                .register(meterRegistry);
+        Gauge.builder("filmorate.feed.writer.queue", queue, BlockingQueue::size)
+                .description("Number of feed events waiting to be written")
+                .register(meterRegistry);
+        if (mode != Mode.SYNC) {
+            writer.setDaemon(true);
+            writer.start();
+        }
+        log.info("feed writer started in {} mode", mode);
+    }
+
+    /**
+     * Gives the event an identifier and writes it according to the mode
+     *
+     * @param feed the event without identifier
+     * @return the same event with identifier
+     * @throws IllegalStateException if the event was not written in SYNC or GROUP_COMMIT mode
+     */
+    public Feed append(Feed feed) {
+        CompletableFuture<Feed> written = appendAsync(feed);
+        try {
+            return written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for the feed batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("feed event " + feed.getEventId() + " is not written", e.getCause());
+        }
+    }
+
+    /**
+     * Gives the event an identifier and queues it without waiting for the batch,
+     * so a caller with several events queues all of them before it waits and they are written together.
+     * The caller still waits while the queue is full
+     *
+     * @param feed the event without identifier
+     * @return the future of the same event with identifier, completed when the event is written in SYNC
+     * or GROUP_COMMIT mode and when it is queued in FIRE_AND_FORGET mode
+     */
+    public CompletableFuture<Feed> appendAsync(Feed feed) {
+        Pending pending = new Pending(feed, mode == Mode.GROUP_COMMIT ? new CompletableFuture<>() : null);
+        feed.setEventId(lastEventId.incrementAndGet());
+        if (mode == Mode.SYNC || !running) {
+            try {
+                write(List.of(pending));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return pending.written == null ? CompletableFuture.completedFuture(feed)
+                    : pending.written.thenApply(written -> feed);
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("interrupted while the feed queue is full", e));
+        }
+        if (!running) {
+            drain();
+        }
+        return pending.written == null ? CompletableFuture.completedFuture(feed)
+                : pending.written.thenApply(written -> feed);
+    }
+
+    /**
+     * Stops accepting events to the queue and waits until the writer drains it.
+     * The writer is not interrupted, an interrupt during file I/O closes the H2 database
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        log.info("feed writer stopped, {} events left in the queue", queue.size());
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                boolean arriving = false;
+                while (batch.size() < batchSize) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) > 0) {
+                        arriving = true;
+                        continue;
+                    }
+                    long wait = deadline - System.nanoTime();
+                    if (!arriving || wait <= 0 || !running) {
+                        break;
+                    }
+                    Pending next = queue.poll(Math.min(wait, TimeUnit.MILLISECONDS.toNanos(POLL_MILLIS)),
+                            TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                log.warn("feed writer interrupted");
+            }
+            if (!batch.isEmpty()) {
+                batch.sort(BY_EVENT_ID);
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the events left in the queue on the calling thread, used by a producer
+     * which queued its event while the writer was stopping
+     */
+    private void drain() {
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            rest.sort(BY_EVENT_ID);
+            write(rest);
+        }
+    }
+
+    /**
+     * Writes the events with one batch insert. If the batch fails, e.g. because the user of one event
+     * has been deleted, events are written one by one and only the failed ones are lost
+     */
+    private void write(List<Pending> batch) {
+        batchSizes.record(batch.size());
+        List<Pending> written = new ArrayList<>(batch.size());
+        try {
+            flushTimer.record(() -> transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (ps, pending) -> bind(ps, pending.feed))));
+            written.addAll(batch);
+        } catch (RuntimeException batchFailure) {
+            for (Pending pending : batch) {
+                try {
+                    transactionTemplate.executeWithoutResult(status ->
+                            jdbcTemplate.update(INSERT, ps -> bind(ps, pending.feed)));
+                    written.add(pending);
+                } catch (RuntimeException e) {
+                    log.warn("feed event {} of user {} is not written: {}",
+                            pending.feed.getEventId(), pending.feed.getUserId(), e.getMessage());
+                    if (pending.written != null) {
+                        pending.written.completeExceptionally(e);
+                    } else if (mode == Mode.SYNC || !running) {
+                        throw e;
+                    }
+                }
+            }
+        }
+        for (Pending pending : written) {
+            if (pending.written != null) {
+                pending.written.complete(null);
+            }
+            try {
+                eventPublisher.publishEvent(pending.feed);
+            } catch (RuntimeException e) {
+                log.warn("feed event {} is not published: {}", pending.feed.getEventId(), e.getMessage());
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Feed feed) throws SQLException {
+        ps.setLong(1, feed.getEventId());
+        ps.setTimestamp(2, new Timestamp(feed.getTimestamp()));
+        ps.setLong(3, feed.getUserId());
+        ps.setString(4, feed.getEventType().toString());
+        ps.setString(5, feed.getOperation().toString());
+        ps.setLong(6, feed.getEntityId());
+    }
+
+    /**
+     * Queued event with the future completed when it is written, the future is null if nobody waits
+     */
+    private static final class Pending {
+
+        private final Feed feed;
+
+        private final CompletableFuture<Void> written;
+
+        private Pending(Feed feed, CompletableFuture<Void> written) {
+            this.feed = feed;
+            this.written = written;
+        }
+    }
+}
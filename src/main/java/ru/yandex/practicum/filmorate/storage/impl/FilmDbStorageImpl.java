@@ -2,23 +2,39 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.SearchParam;
 import ru.yandex.practicum.filmorate.model.SortParam;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -28,11 +44,55 @@ import java.util.stream.Collectors;
  * @see FilmGenreDbStorageImpl
  * @see LikesDbStorageImpl
  * @see DirectorDbStorageImpl
+ * @see PopularityIndex
+ * @see FilmSearchIndex
+ * @see LikesIndex
+ * @see ReferenceDataCache
+ * @see FilmCache
  */
 @Primary
 @Component
 @RequiredArgsConstructor
 public class FilmDbStorageImpl implements FilmStorage {
+    /**
+     * film by identifier
+     */
+    public static final String FIND_BY_ID = "SELECT F.* FROM FILMS F WHERE F.FILM_ID = ?";
+
+    /**
+     * films by the array of identifiers
+     */
+    public static final String FIND_BY_IDS = "SELECT F.* FROM FILMS F WHERE F.FILM_ID = ANY(?)";
+
+    /**
+     * page of films after the identifier
+     */
+    public static final String FIND_PAGE = "SELECT F.* FROM FILMS F WHERE F.FILM_ID > ? ORDER BY F.FILM_ID LIMIT ?";
+
+    /**
+     * existence of film by identifier
+     */
+    public static final String EXISTS_BY_ID = "SELECT EXISTS (SELECT 1 FROM films WHERE film_id = ?)";
+
+    /**
+     * films of the director ordered by release year, the films are joined to the range of the director index
+     */
+    public static final String FIND_BY_DIRECTOR_ORDER_BY_YEAR = "SELECT F.* FROM FILM_DIRECTORS FD "
+            + "INNER JOIN FILMS F ON F.FILM_ID = FD.FILM_ID WHERE FD.DIRECTOR_ID = ? "
+            + "ORDER BY EXTRACT(year FROM RELEASE_DATE)";
+
+    /**
+     * films of the director ordered by likes
+     */
+    public static final String FIND_BY_DIRECTOR_ORDER_BY_LIKES = "SELECT F.* FROM FILM_DIRECTORS FD "
+            + "INNER JOIN FILMS F ON F.FILM_ID = FD.FILM_ID WHERE FD.DIRECTOR_ID = ? "
+            + "ORDER BY F.LIKES_COUNT DESC, F.FILM_ID";
+
+    /**
+     * number of films read and hydrated together while streaming
+     */
+    private static final int STREAM_CHUNK_SIZE = 100;
+
     private final JdbcTemplate jdbcTemplate;
 
     private final FilmGenreDbStorageImpl fgStorage;
@@ -41,6 +101,16 @@ public class FilmDbStorageImpl implements FilmStorage {
 
     private final DirectorDbStorageImpl directorDbStorage;
 
+    private final PopularityIndex popularityIndex;
+
+    private final FilmSearchIndex searchIndex;
+
+    private final LikesIndex likesIndex;
+
+    private final ReferenceDataCache referenceDataCache;
+
+    private final FilmCache filmCache;
+
     /**
      * Query will return all films from storage
      *
@@ -49,9 +119,45 @@ public class FilmDbStorageImpl implements FilmStorage {
      */
     @Override
     public List<Film> findAll() {
-        String sql = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID";
-        return jdbcTemplate.query(sql, this::mapRowToFilm);
+        String sql = "SELECT F.* FROM FILMS F";
+        return hydrate(jdbcTemplate.query(sql, this::mapRowToFilm));
+    }
+
+    /**
+     * Query will return one page of films ordered by identifier
+     *
+     * @param after identifier of the last film of the previous page, films with greater identifiers are returned
+     * @param limit maximum number of films in the page
+     * @return List of Film with identifiers greater than after
+     * @see Film
+     */
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        return hydrate(jdbcTemplate.query(FIND_PAGE, this::mapRowToFilm, after, limit));
+    }
+
+    /**
+     * Reads all films ordered by identifier page by page and passes them to the consumer
+     * in chunks of {@value #STREAM_CHUNK_SIZE}, so only one chunk is kept in memory.
+     * Every page is read by a keyset query and hydrated after its connection is returned to the pool,
+     * so streaming never holds one connection while waiting for another
+     * nor while the consumer writes the chunk to a client which may read slowly
+     *
+     * @param consumer receiver of the hydrated chunks of films
+     * @see Film
+     */
+    @Override
+    public void streamAll(Consumer<List<Film>> consumer) {
+        long after = 0;
+        List<Film> chunk = findPage(after, STREAM_CHUNK_SIZE);
+        while (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            after = chunk.get(chunk.size() - 1).getId();
+            chunk = findPage(after, STREAM_CHUNK_SIZE);
+        }
     }
 
     /**
@@ -70,17 +176,21 @@ public class FilmDbStorageImpl implements FilmStorage {
                 .addValue("description", film.getDescription())
                 .addValue("release_date", film.getReleaseDate())
                 .addValue("duration", film.getDuration())
-                .addValue("rating_mpa_id", film.getMpa().getId());
+                .addValue("rating_mpa_id", film.getMpa().getId())
+                .addValue("likes_count", 0);
 
         Number id = simpleJdbcInsert.executeAndReturnKey(parameters);
         film.setId((Long) id);
         fgStorage.updateGenres(film);
         directorDbStorage.updateDirectors(film);
+        popularityIndex.onFilmSaved(film);
+        searchIndex.onFilmSaved(film);
         return film;
     }
 
     /**
-     * Update film in the storage
+     * Update film in the storage. Likes of the film are not changed,
+     * they are managed by {@link LikesDbStorageImpl#addLike(Long, Long)} and {@link LikesDbStorageImpl#removeLike(Long, Long)}
      *
      * @param film the object we want to update in the storage
      * @return Film object updated parameters in storage
@@ -88,7 +198,7 @@ public class FilmDbStorageImpl implements FilmStorage {
      */
     @Override
     public Film update(Film film) {
-        findFilmById(film.getId());
+        Film savedFilm = findFilmById(film.getId());
         String sql = "UPDATE films SET film_name =?," +
                 "description=?, release_date=?," +
                 "duration=?, rating_mpa_id=? WHERE film_id=?";
@@ -96,28 +206,39 @@ public class FilmDbStorageImpl implements FilmStorage {
                 film.getReleaseDate(), film.getDuration(),
                 film.getMpa().getId(), film.getId());
         fgStorage.updateGenres(film);
-        likesStorage.updateLikes(film);
         directorDbStorage.updateDirectors(film);
+        filmCache.invalidate(film.getId());
+        film.setLikes(savedFilm.getLikes());
+        popularityIndex.onFilmSaved(film);
+        searchIndex.onFilmSaved(film);
         return film;
     }
 
     /**
-     * Searches for a film by ID in storage
+     * Searches for a film by ID in the film cache, loads it from storage on a miss
      *
      * @param filmId the identifier by which we want to find the movie in storage
      * @return Film the film object saved in storage under specified identifier
      * @see Film
+     * @see FilmCache
      */
     @Override
     public Film findFilmById(Long filmId) {
-        String sql = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "WHERE F.FILM_ID=?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::mapRowToFilm, filmId);
-        } catch (EmptyResultDataAccessException e) {
-            throw new FilmNotFoundException(filmId + " id - film not found");
-        }
+        return filmCache.get(filmId, this::loadFilmById);
+    }
+
+    /**
+     * Loads the film with likes, genres and directors from storage
+     *
+     * @param filmId the identifier of the movie
+     * @return Film the film object saved in storage under specified identifier
+     */
+    private Film loadFilmById(Long filmId) {
+        Film film = jdbcTemplate.query(FIND_BY_ID, this::mapRowToFilm, filmId).stream()
+                .findFirst()
+                .orElseThrow(() -> new FilmNotFoundException(filmId + " id - film not found"));
+        hydrate(Collections.singletonList(film));
+        return film;
     }
 
     /**
@@ -132,58 +253,43 @@ public class FilmDbStorageImpl implements FilmStorage {
         Film film = findFilmById(filmId);
         String sql = "DELETE FROM films WHERE film_id=?";
         jdbcTemplate.update(sql, filmId);
+        filmCache.invalidate(filmId);
+        popularityIndex.onFilmDeleted(filmId);
+        searchIndex.onFilmDeleted(filmId);
+        likesIndex.onFilmDeleted(filmId);
         return film;
     }
 
     /**
-     * Returns movies sorted by number of likes
+     * Returns movies sorted by number of likes. The order is taken from the popularity index
      *
      * @param count   count of movies
      * @param genreId id genres
      * @param year    release year
      * @return List of Film
      * @see Film
+     * @see PopularityIndex
      */
     @Override
     public List<Film> getPopularFilms(int count, Integer genreId, Integer year) {
-        final String sql = "SELECT F.FILM_ID, count(USER_ID) LIKES\n" +
-                "FROM FILM_LIKES FL\n" +
-                "RIGHT JOIN FILMS F on FL.FILM_ID = F.FILM_ID\n" +
-                "WHERE (? is null OR EXISTS (SELECT 1 FROM FILM_GENRE FG WHERE FG.FILM_ID = F.FILM_ID AND FG.GENRE_ID = ?)) \n" +
-                "  AND (? is null OR EXTRACT(YEAR FROM F.RELEASE_DATE) = ?) \n" +
-                "GROUP BY F.FILM_ID\n" +
-                "ORDER BY LIKES DESC\n" +
-                "LIMIT ?";
-
-        List<Long> idList = jdbcTemplate.query(sql, (rs, i) -> rs.getLong("film_id"), genreId, genreId, year, year, count);
-        return idList.stream().map(this::findFilmById).collect(Collectors.toList());
+        return findFilmsByIds(popularityIndex.top(count, genreId, year));
     }
 
     /**
-     * Return common movies by two users
+     * Return common movies by two users, the intersection of their likes is taken from the like bitmaps
      *
      * @param userId   id first user
      * @param friendId id second user
-     * @return List of Film
+     * @return List of Film ordered by likes descending, then by identifier
      * @see Film
+     * @see LikesIndex#commonFilms(Long, Long)
      */
     @Override
     public List<Film> getCommonFilms(Long userId, Long friendId) {
-        final String sql = "SELECT F.FILM_ID, count(USER_ID) LIKES\n" +
-                "FROM FILM_LIKES FL\n" +
-                "RIGHT JOIN FILMS F on FL.FILM_ID = F.FILM_ID\n" +
-                "WHERE F.FILM_ID IN (" +
-                "SELECT FL2.FILM_ID FROM FILM_LIKES FL2 WHERE FL2.USER_ID = ? AND FL2.FILM_ID IN(" +
-                "SELECT FL3.FILM_ID FROM FILM_LIKES FL3 WHERE FL3.USER_ID = ?" +
-                ") GROUP BY FL2.FILM_ID" +
-                ") " +
-                "GROUP BY F.FILM_ID\n" +
-                "ORDER BY LIKES DESC";
-        System.out.println("userId: " + userId);
-        System.out.println("friendId: " + friendId);
-        List<Long> idList = jdbcTemplate.query(sql, (rs, i) -> rs.getLong("film_id"), userId, friendId);
-
-        return idList.stream().map(this::findFilmById).collect(Collectors.toList());
+        List<Long> ids = likesIndex.commonFilms(userId, friendId);
+        ids.sort(Comparator.comparingInt(popularityIndex::likes).reversed()
+                .thenComparing(Comparator.naturalOrder()));
+        return findFilmsByIds(ids);
     }
 
     /**
@@ -197,41 +303,38 @@ public class FilmDbStorageImpl implements FilmStorage {
      */
     @Override
     public List<Film> searchFilms(String text, EnumSet<SearchParam> searchParams) {
-        final String sqlAllSearch = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "                LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "                LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID\n" +
-                "                LEFT JOIN DIRECTORS D on FD.DIRECTOR_ID = D.DIRECTOR_ID\n" +
-                "                LEFT JOIN FILM_LIKES FL on F.FILM_ID = FL.FILM_ID\n" +
-                "                WHERE D.DIRECTOR_NAME ILIKE '%'||?||'%'\n" +
-                "                OR F.FILM_NAME ILIKE '%'||?||'%'\n" +
-                "                GROUP BY F.FILM_ID\n" +
-                "                ORDER BY COUNT(FL.USER_ID) DESC";
-        final String sqlSearchByDirector = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "                LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "                LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID\n" +
-                "                LEFT JOIN DIRECTORS D on FD.DIRECTOR_ID = D.DIRECTOR_ID\n" +
-                "                LEFT JOIN FILM_LIKES FL on F.FILM_ID = FL.FILM_ID\n" +
-                "                WHERE D.DIRECTOR_NAME ILIKE '%'||?||'%'\n" +
-                "                GROUP BY F.FILM_ID\n" +
-                "                ORDER BY COUNT(FL.USER_ID) DESC";
-        final String sqlSearchByFilmTitle = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "                LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "                LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID\n" +
-                "                LEFT JOIN DIRECTORS D on FD.DIRECTOR_ID = D.DIRECTOR_ID\n" +
-                "                LEFT JOIN FILM_LIKES FL on F.FILM_ID = FL.FILM_ID\n" +
-                "                WHERE F.FILM_NAME ILIKE '%'||?||'%'\n" +
-                "                GROUP BY F.FILM_ID\n" +
-                "                ORDER BY COUNT(FL.USER_ID) DESC";
-
-        return (searchParams.contains(SearchParam.title) && searchParams.contains(SearchParam.director))
-                ?
-                jdbcTemplate.query(sqlAllSearch, this::mapRowToFilm, text, text)
-                :
-                searchParams.contains(SearchParam.director)
-                        ?
-                        jdbcTemplate.query(sqlSearchByDirector, this::mapRowToFilm, text)
-                        :
-                        jdbcTemplate.query(sqlSearchByFilmTitle, this::mapRowToFilm, text);
+        return findFilmsByIds(searchIndex.search(text, searchParams));
+    }
+
+    /**
+     * Searches for several movies by their IDs in the film cache,
+     * the missing ones are loaded from storage by one query
+     *
+     * @param ids the identifiers of the movies
+     * @return List of Film in the same order as identifiers, unknown identifiers are skipped
+     * @see Film
+     * @see FilmCache
+     */
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return filmCache.getAll(ids, this::loadFilmsByIds);
+    }
+
+    /**
+     * Loads the films with likes, genres and directors from storage by one query
+     *
+     * @param ids the identifiers of the movies
+     * @return Map of Film by identifier, unknown identifiers are absent
+     */
+    private Map<Long, Film> loadFilmsByIds(List<Long> ids) {
+        return hydrate(jdbcTemplate.query(FIND_BY_IDS,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())),
+                this::mapRowToFilm))
+                .stream()
+                .collect(Collectors.toMap(Film::getId, Function.identity()));
     }
 
     /**
@@ -241,12 +344,13 @@ public class FilmDbStorageImpl implements FilmStorage {
      * @return true or false
      */
     public Boolean containsIdFilm(Long filmId) {
-        final String sql = "SELECT film_id FROM films WHERE film_id = ?";
-        return jdbcTemplate.queryForList(sql, filmId).size() > 0;
+        return jdbcTemplate.queryForObject(EXISTS_BY_ID, Boolean.class, filmId);
     }
 
     /**
-     * Mapping a query result to Film object
+     * Mapping a query result to Film object without likes, genres and directors.
+     * These are filled in for the whole list of films at once by {@link #hydrate(List)}.
+     * MPA rating is resolved by identifier from the reference data cache
      *
      * @param rs the specified as identifier of ResultSet
      * @param i  the specified as number of record from ResultSet
@@ -255,24 +359,35 @@ public class FilmDbStorageImpl implements FilmStorage {
      * @see Mpa
      */
     private Film mapRowToFilm(ResultSet rs, int i) throws SQLException {
-        Mpa mpa = Mpa.builder()
-                .id(rs.getInt("rating_mpa_id"))
-                .name(rs.getString("mpa_name"))
-                .description(rs.getString("mpa_description"))
-                .build();
-
-        Film film = Film.builder()
+        return Film.builder()
                 .id(rs.getLong("film_id"))
                 .name(rs.getString("film_name"))
                 .description(rs.getString("description"))
                 .releaseDate(rs.getDate("release_date").toLocalDate())
                 .duration(rs.getInt("duration"))
-                .mpa(mpa)
+                .mpa(referenceDataCache.findMpaById(rs.getInt("rating_mpa_id")))
                 .build();
-        film.setLikes(likesStorage.getLikesByFilmId(film.getId()));
-        film.setGenres(fgStorage.getGenresByFilmId(film.getId()));
-        film.setDirectors(directorDbStorage.getDirectorsByFilmId(film.getId()));
-        return film;
+    }
+
+    /**
+     * Loads likes, genres and directors for the given films with one query per association
+     * and sets them to the films, so the number of queries does not depend on the number of films
+     *
+     * @param films the films mapped by {@link #mapRowToFilm(ResultSet, int)}
+     * @return the same List of Film with likes, genres and directors
+     * @see Film
+     */
+    private List<Film> hydrate(List<Film> films) {
+        Set<Long> ids = films.stream().map(Film::getId).collect(Collectors.toSet());
+        Map<Long, Set<Long>> likes = likesStorage.getLikesByFilmIds(ids);
+        Map<Long, SortedSet<Genre>> genres = fgStorage.getGenresByFilmIds(ids);
+        Map<Long, Set<Director>> directors = directorDbStorage.getDirectorsByFilmIds(ids);
+        for (Film film : films) {
+            film.setLikes(likes.getOrDefault(film.getId(), new HashSet<>()));
+            film.setGenres(genres.getOrDefault(film.getId(), new TreeSet<>()));
+            film.setDirectors(directors.getOrDefault(film.getId(), new HashSet<>()));
+        }
+        return films;
     }
 
     /**
@@ -288,24 +403,10 @@ public class FilmDbStorageImpl implements FilmStorage {
     public List<Film> getSortedFilmsByDirector(Long directorId, SortParam sortBy) {
         directorDbStorage.findDirectorById(directorId);
 
-        final String sqlYear = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "                LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "                LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID\n" +
-                "                WHERE FD.DIRECTOR_ID=?\n" +
-                "                ORDER BY EXTRACT(year FROM RELEASE_DATE)";
-
-        final String sqlLikes = "SELECT F.*, R.MPA_NAME, R.MPA_DESCRIPTION FROM FILMS F\n" +
-                "                LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID\n" +
-                "                LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID\n" +
-                "                LEFT JOIN FILM_LIKES FL on F.FILM_ID = FL.FILM_ID\n" +
-                "                WHERE FD.DIRECTOR_ID=?\n" +
-                "                GROUP BY F.FILM_ID\n" +
-                "                ORDER BY COUNT(USER_ID) DESC";
-
-        return sortBy.equals(SortParam.likes)
+        return hydrate(sortBy.equals(SortParam.likes)
                 ?
-                jdbcTemplate.query(sqlLikes, this::mapRowToFilm, directorId)
+                jdbcTemplate.query(FIND_BY_DIRECTOR_ORDER_BY_LIKES, this::mapRowToFilm, directorId)
                 :
-                jdbcTemplate.query(sqlYear, this::mapRowToFilm, directorId);
+                jdbcTemplate.query(FIND_BY_DIRECTOR_ORDER_BY_YEAR, this::mapRowToFilm, directorId));
     }
 }
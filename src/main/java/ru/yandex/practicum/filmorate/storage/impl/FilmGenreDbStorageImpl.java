@@ -5,21 +5,30 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 /**
  * Class is provides database functionalities for films and genres.
  *
- * @see GenreDbStorageImpl
+ * @see ReferenceDataCache
  * @see JdbcTemplate
  */
 @Component
 @RequiredArgsConstructor
 public class FilmGenreDbStorageImpl {
 
-    private final GenreDbStorageImpl genreDbStorage;
+    /**
+     * genres of the films by the array of film identifiers
+     */
+    public static final String FIND_BY_FILM_IDS = "SELECT film_id, genre_id FROM film_genre WHERE film_id = ANY(?)";
+
+    private final ReferenceDataCache referenceDataCache;
     private final JdbcTemplate jdbcTemplate;
 
     /**
@@ -41,15 +50,24 @@ public class FilmGenreDbStorageImpl {
     }
 
     /**
-     * Will return all genres that belong to the given movie
+     * Will return all genres that belong to the several movies by one query,
+     * genres are resolved by identifier from the reference data cache
      *
-     * @param id of the movie for which we want to find all its genres
-     * @return SortedSet of Genre
+     * @param ids of the movies for which we want to find all their genres
+     * @return a Map where the key is the movie identifier, the value is SortedSet of Genre.
+     * Movies without genres are not present in the map
      * @see Genre
      */
-    public SortedSet<Genre> getGenresByFilmId(Long id) {
-        String sql = "SELECT GENRES.* FROM FILM_GENRE " +
-                "LEFT JOIN GENRES ON FILM_GENRE.GENRE_ID = GENRES.GENRE_ID WHERE film_id=?";
-        return new TreeSet<>(jdbcTemplate.query(sql, genreDbStorage::mapRowToGenre, id));
+    public Map<Long, SortedSet<Genre>> getGenresByFilmIds(Collection<Long> ids) {
+        Map<Long, SortedSet<Genre>> genres = new HashMap<>();
+        if (ids.isEmpty()) {
+            return genres;
+        }
+        jdbcTemplate.query(FIND_BY_FILM_IDS, ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())),
+                rs -> {
+                    genres.computeIfAbsent(rs.getLong("film_id"), id -> new TreeSet<>())
+                            .add(referenceDataCache.findGenreById(rs.getInt("genre_id")));
+                });
+        return genres;
     }
 }
\ No newline at end of file
@@ -7,37 +7,47 @@ import ru.yandex.practicum.filmorate.model.User;
 
 /**
  * Class is provides database functionalities for friends.
+ * Friendships are added and removed one row at a time, the other friends of the user are not touched.
+ * The user cache and the social graph learn about changed friendships from the outbox.
  *
  * @see JdbcTemplate
+ * @see ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay
  */
 @Component
 @RequiredArgsConstructor
 public class FriendsStorageImpl {
 
+    /**
+     * removal of the friend of the user
+     */
+    public static final String DELETE_FRIEND = "DELETE FROM friends WHERE user_id = ? AND friend_id = ?";
+
     private final JdbcTemplate jdbcTemplate;
 
     /**
-     * Updates the user's friends
+     * Add the friend to the user. Repeated add of the same friend changes nothing
      *
-     * @param user who needs to update friends
+     * @param id       the identifier user
+     * @param friendId the identifier friend
+     * @return true if the friend was added, false if the user already had the friend
      * @see User
      */
-    public void updateFriends(User user) {
-        String sql = "DELETE FROM friends WHERE user_id=?";
-        String sql2 = "INSERT INTO friends (user_id, friend_id) VALUES(?,?)";
-        jdbcTemplate.update(sql, user.getId());
-        user.getFriends().forEach(fId -> jdbcTemplate.update(sql2, user.getId(), fId));
+    public boolean addFriend(Long id, Long friendId) {
+        String sql = "MERGE INTO friends F USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT))) S(user_id, friend_id) " +
+                "ON F.user_id = S.user_id AND F.friend_id = S.friend_id " +
+                "WHEN NOT MATCHED THEN INSERT (user_id, friend_id) VALUES (S.user_id, S.friend_id)";
+        return jdbcTemplate.update(sql, id, friendId) > 0;
     }
 
     /**
-     * Checks if the user with identifier id has a friend with identifier friendId
+     * Remove the friend from the user
      *
      * @param id       the identifier user
      * @param friendId the identifier friend
-     * @return true or false
+     * @return true if the friend was removed, false if the user did not have the friend
+     * @see User
      */
-    public Boolean containsFriend(Long id, Long friendId) {
-        String sql = "SELECT user_id FROM friends WHERE user_id = ? AND friend_id = ?";
-        return jdbcTemplate.queryForList(sql, id, friendId).size() > 0;
+    public boolean removeFriend(Long id, Long friendId) {
+        return jdbcTemplate.update(DELETE_FRIEND, id, friendId) > 0;
     }
 }
@@ -1,12 +1,10 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.exception.GenreNotFoundException;
-import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -14,6 +12,7 @@ import java.util.List;
 
 /**
  * Class is provides database functionalities for genres.
+ * Genres are read through {@link ReferenceDataCache}.
  */
 
 @Component
@@ -40,29 +39,10 @@ public class GenreDbStorageImpl {
      * @return Genre object
      * @see Genre
      */
-
-    Genre mapRowToGenre(ResultSet rs, int i) throws SQLException {
+    private Genre mapRowToGenre(ResultSet rs, int i) throws SQLException {
         return Genre.builder()
                 .id(rs.getInt("genre_id"))
                 .name(rs.getString("genre_name"))
                 .build();
     }
-
-    /**
-     * Searches for a genre by ID in storage
-     *
-     * @param genreID the specified as identifier of the genre
-     * @return Genre
-     * @throws GenreNotFoundException if the genre not found in the storage by ID
-     * @see Genre
-     * @see Film
-     */
-    public Genre findGenreById(Long genreID) {
-        String sql = "SELECT * FROM GENRES WHERE genre_id=?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::mapRowToGenre, genreID);
-        } catch (EmptyResultDataAccessException e) {
-            throw new GenreNotFoundException(genreID + " id - genre not found");
-        }
-    }
 }
@@ -8,6 +8,8 @@ import ru.yandex.practicum.filmorate.model.SortParam;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
 public class InMemoryFilmStorageImpl implements FilmStorage {
@@ -21,6 +23,20 @@ public class InMemoryFilmStorageImpl implements FilmStorage {
         return new ArrayList<>(films.values());
     }
 
+    @Override
+    public List<Film> findPage(Long after, int limit) {
+        return films.values().stream()
+                .filter(value -> value.getId() > after)
+                .sorted(Comparator.comparing(Film::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<List<Film>> consumer) {
+        consumer.accept(findPage(0L, Integer.MAX_VALUE));
+    }
+
     @Override
     public Film create(Film film) {
         film.setId(nextID());
@@ -46,6 +62,14 @@ public class InMemoryFilmStorageImpl implements FilmStorage {
         throw new FilmNotFoundException(filmId + " id - Film not exist");
     }
 
+    @Override
+    public List<Film> findFilmsByIds(List<Long> ids) {
+        return ids.stream()
+                .map(films::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
     @Override
     public Film deleteFilmById(Long filmId) {
         if (films.containsKey(filmId)) {
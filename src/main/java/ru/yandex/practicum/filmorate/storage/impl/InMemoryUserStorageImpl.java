@@ -7,9 +7,12 @@ import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Component
 public class InMemoryUserStorageImpl implements UserStorage {
@@ -21,6 +24,20 @@ public class InMemoryUserStorageImpl implements UserStorage {
         return new ArrayList<>(users.values());
     }
 
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        return users.values().stream()
+                .filter(value -> value.getId() > after)
+                .sorted(Comparator.comparing(User::getId))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void streamAll(Consumer<List<User>> consumer) {
+        consumer.accept(findPage(0L, Integer.MAX_VALUE));
+    }
+
     public User create(User user) {
         user.setId(nextID());
         users.put(user.getId(), user);
@@ -58,6 +75,14 @@ public class InMemoryUserStorageImpl implements UserStorage {
         return null;
     }
 
+    @Override
+    public List<User> findUsersByIds(List<Long> ids) {
+        return ids.stream()
+                .filter(users::containsKey)
+                .map(users::get)
+                .collect(Collectors.toList());
+    }
+
     public Boolean containsIdUser(Long userId) {
         return true;
     }
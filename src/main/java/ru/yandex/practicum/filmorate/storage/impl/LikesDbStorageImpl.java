@@ -2,51 +2,130 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
  * Class is provides database functionalities for likes to the film.
+ * Besides the FILM_LIKES rows it keeps the FILMS.LIKES_COUNT counter, which is used for ordering films by popularity.
+ * In-memory indexes and caches learn about changed likes from the outbox.
+ *
+ * @see ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay
  */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class LikesDbStorageImpl {
 
+    /**
+     * removal of the like of the user from the film
+     */
+    public static final String DELETE_LIKE = "DELETE FROM film_likes WHERE film_id = ? AND user_id = ?";
+
+    /**
+     * likes of the films by the array of film identifiers
+     */
+    public static final String FIND_BY_FILM_IDS = "SELECT film_id, user_id FROM film_likes WHERE film_id = ANY(?)";
+
+    /**
+     * existence of the like of the user to the film
+     */
+    public static final String EXISTS_LIKE = "SELECT EXISTS (SELECT 1 FROM film_likes WHERE film_id = ? AND user_id = ?)";
+
     /**
      * @see JdbcTemplate
      */
     private final JdbcTemplate jdbcTemplate;
 
     /**
-     * Update likes users to the film to storage
+     * Add like of the user to the film. Repeated like of the same user changes nothing.
+     * The likes counter of the film is changed in the same transaction.
+     *
+     * @param filmId the specified as identifier of the film
+     * @param userId the specified as identifier of the user
+     * @return true if the like was added, false if the user already liked the film
+     * @see Film
+     */
+    @Transactional
+    public boolean addLike(Long filmId, Long userId) {
+        String sql = "MERGE INTO film_likes FL USING (VALUES (CAST(? AS BIGINT), CAST(? AS BIGINT))) S(film_id, user_id) " +
+                "ON FL.film_id = S.film_id AND FL.user_id = S.user_id " +
+                "WHEN NOT MATCHED THEN INSERT (film_id, user_id) VALUES (S.film_id, S.user_id)";
+        if (jdbcTemplate.update(sql, filmId, userId) == 0) {
+            return false;
+        }
+        String sql2 = "UPDATE films SET likes_count = likes_count + 1 WHERE film_id = ?";
+        jdbcTemplate.update(sql2, filmId);
+        return true;
+    }
+
+    /**
+     * Remove like of the user from the film.
+     * The likes counter of the film is changed in the same transaction.
      *
-     * @param film the specified as film by Film object
+     * @param filmId the specified as identifier of the film
+     * @param userId the specified as identifier of the user
+     * @return true if the like was removed, false if the user did not like the film
      * @see Film
      */
-    public void updateLikes(Film film) {
-        if (film.getLikes() == null) {
-            film.setLikes(new HashSet<>());
+    @Transactional
+    public boolean removeLike(Long filmId, Long userId) {
+        if (jdbcTemplate.update(DELETE_LIKE, filmId, userId) == 0) {
+            return false;
         }
-        String sql = "DELETE FROM FILM_LIKES WHERE film_id=?";
-        jdbcTemplate.update(sql, film.getId());
-        String sql2 = "INSERT INTO FILM_LIKES (film_id, user_id) VALUES(?,?)";
-        film.getLikes().forEach(id -> jdbcTemplate.update(sql2, film.getId(), id));
+        String sql2 = "UPDATE films SET likes_count = likes_count - 1 WHERE film_id = ?";
+        jdbcTemplate.update(sql2, filmId);
+        return true;
     }
 
     /**
-     * Get likes users to the film from the storage
+     * Rebuilds likes counters of the films from FILM_LIKES.
+     * Runs on application start, so counters left inconsistent by a crash are repaired.
      *
-     * @param id the specified as identifier of the film
-     * @return a Set of users, which liked the film
+     * @return the number of films whose counter was corrected
      * @see Film
      */
-    public Set<Long> getLikesByFilmId(Long id) {
-        String sql = "SELECT user_id FROM film_likes WHERE film_id=?";
-        return new HashSet<>(jdbcTemplate.query(sql, (rs, i) -> rs.getLong("user_id"), id));
+    @EventListener(ApplicationReadyEvent.class)
+    public int reconcileLikesCount() {
+        String sql = "UPDATE films F SET likes_count = " +
+                "(SELECT COUNT(*) FROM film_likes FL WHERE FL.film_id = F.film_id) " +
+                "WHERE likes_count <> (SELECT COUNT(*) FROM film_likes FL WHERE FL.film_id = F.film_id)";
+        int corrected = jdbcTemplate.update(sql);
+        if (corrected > 0) {
+            log.warn("likes counters corrected for {} films", corrected);
+        }
+        return corrected;
+    }
+
+    /**
+     * Get likes users to the several films from the storage by one query
+     *
+     * @param ids the specified as identifiers of the films
+     * @return a Map where the key is the film identifier, the value is a Set of users, which liked the film.
+     * Films without likes are not present in the map
+     * @see Film
+     */
+    public Map<Long, Set<Long>> getLikesByFilmIds(Collection<Long> ids) {
+        Map<Long, Set<Long>> likes = new HashMap<>();
+        if (ids.isEmpty()) {
+            return likes;
+        }
+        jdbcTemplate.query(FIND_BY_FILM_IDS, ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())),
+                rs -> {
+                    likes.computeIfAbsent(rs.getLong("film_id"), id -> new HashSet<>()).add(rs.getLong("user_id"));
+                });
+        return likes;
     }
 
     /**
@@ -58,7 +137,6 @@ public class LikesDbStorageImpl {
      * @see Film
      */
     public Boolean containsLike(Long id, Long userId) {
-        String sql = "SELECT user_id FROM film_likes WHERE film_id = ? AND user_id = ?";
-        return jdbcTemplate.queryForList(sql, id, userId).size() > 0;
+        return jdbcTemplate.queryForObject(EXISTS_LIKE, Boolean.class, id, userId);
     }
 }
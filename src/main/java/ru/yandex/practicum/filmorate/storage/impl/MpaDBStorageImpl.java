@@ -1,13 +1,12 @@
 package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
-import ru.yandex.practicum.filmorate.exception.NoSuchIdException;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.storage.cache.ReferenceDataCache;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -15,6 +14,7 @@ import java.util.List;
 
 /**
  * Class is provides database functionalities for MPA rating of the film.
+ * MPA ratings are read through {@link ReferenceDataCache}.
  */
 @Component
 @RequiredArgsConstructor
@@ -32,7 +32,7 @@ public class MpaDBStorageImpl {
      * @see Film
      */
     public List<Mpa> findAll() {
-        String sql = "SELECT * FROM RATING_MPA";
+        String sql = "SELECT * FROM RATING_MPA ORDER BY MPA_ID";
         return jdbcTemplate.query(sql, this::mapRowToMpa);
     }
 
@@ -51,22 +51,4 @@ public class MpaDBStorageImpl {
                 .description(rs.getString("mpa_description"))
                 .build();
     }
-
-    /**
-     * Get MPA rating by his id
-     *
-     * @param mpaID the specified as identifier of the mpa rating
-     * @return the MPA rating as Mpa Object
-     * @throws NoSuchIdException if the mpa rating not found in the storage by ID
-     * @see Mpa
-     * @see Film
-     */
-    public Mpa findMpaById(Long mpaID) {
-        String sql = "SELECT * FROM RATING_MPA WHERE mpa_id=?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::mapRowToMpa, mpaID);
-        } catch (EmptyResultDataAccessException e) {
-            throw new NoSuchIdException(mpaID + " id - mpa not found");
-        }
-    }
 }
@@ -7,6 +7,7 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.exception.AlreadyExistException;
+import ru.yandex.practicum.filmorate.exception.NoSuchIdException;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.storage.ReviewStorage;
 
@@ -18,10 +19,55 @@ import java.util.List;
 
 /**
  * Class is provides database functionalities for reviews.
+ * Usefulness of a review is read from the REVIEWS.USEFUL counter maintained by {@link ReviewLikeDbStorageImpl}.
  */
 @Component
 @RequiredArgsConstructor
 public class ReviewDbStorageImpl implements ReviewStorage {
+    /**
+     * keyset condition of the page after the review with given usefulness and identifier
+     * in the order of usefulness descending, then identifier ascending.
+     * The first part bounds the range of the index, the second one skips the rest of the previous page
+     */
+    private static final String AFTER = " AND useful <= ? AND (useful < ? OR review_id > ?)";
+
+    /**
+     * review by identifier
+     */
+    public static final String FIND_BY_ID = "SELECT * FROM reviews WHERE review_id = ?";
+
+    /**
+     * existence of review by identifier
+     */
+    public static final String EXISTS_BY_ID = "SELECT EXISTS (SELECT 1 FROM reviews WHERE review_id = ?)";
+
+    /**
+     * existence of review of the user on the film
+     */
+    public static final String EXISTS_BY_FILM_AND_USER = "SELECT EXISTS (SELECT 1 FROM reviews WHERE film_id = ? AND user_id = ?)";
+
+    /**
+     * first page of reviews of the film
+     */
+    public static final String FIND_BY_FILM = "SELECT * FROM reviews WHERE film_id = ? ORDER BY useful DESC, review_id LIMIT ?";
+
+    /**
+     * page of reviews of the film after the review
+     */
+    public static final String FIND_BY_FILM_AFTER = "SELECT * FROM reviews WHERE film_id = ?" + AFTER
+            + " ORDER BY useful DESC, review_id LIMIT ?";
+
+    /**
+     * first page of all reviews
+     */
+    public static final String FIND_ALL = "SELECT * FROM reviews ORDER BY useful DESC, review_id LIMIT ?";
+
+    /**
+     * page of all reviews after the review
+     */
+    public static final String FIND_ALL_AFTER = "SELECT * FROM reviews WHERE TRUE" + AFTER
+            + " ORDER BY useful DESC, review_id LIMIT ?";
+
     /**
      * @see JdbcTemplate
      */
@@ -41,8 +87,7 @@ public class ReviewDbStorageImpl implements ReviewStorage {
      * @see Review
      */
     public Review add(Review review) {
-        final String sqlUserHaveReviewFilm = "SELECT * FROM reviews WHERE film_id = ? AND user_id = ?";
-        if (jdbcTemplate.queryForList(sqlUserHaveReviewFilm, review.getFilmId(), review.getUserId()).size() > 0) {
+        if (jdbcTemplate.queryForObject(EXISTS_BY_FILM_AND_USER, Boolean.class, review.getFilmId(), review.getUserId())) {
             throw new AlreadyExistException("Пользователь с ID = "
                     + review.getUserId() + " уже оставлял отзыв на фильм ID = " + review.getFilmId());
         }
@@ -58,7 +103,7 @@ public class ReviewDbStorageImpl implements ReviewStorage {
             return stmt;
         }, keyHolder);
         review.setReviewId(keyHolder.getKey().longValue());
-        review.setUseful(reviewLikeDbStorage.getResultUseful(review.getReviewId()));
+        review.setUseful(0);
         return review;
     }
 
@@ -68,11 +113,13 @@ public class ReviewDbStorageImpl implements ReviewStorage {
      *
      * @param reviewId the specified as identifier of review
      * @return the review as Review object
+     * @throws NoSuchIdException if the review not found in the storage by ID
      * @see Review
      */
     public Review get(Long reviewId) {
-        final String sql = "SELECT * FROM reviews WHERE review_id = ?";
-        return jdbcTemplate.queryForObject(sql, this::mapRowToReview, reviewId);
+        return jdbcTemplate.query(FIND_BY_ID, this::mapRowToReview, reviewId).stream()
+                .findFirst()
+                .orElseThrow(() -> new NoSuchIdException("Отзыв по ID = " + reviewId + " не найден"));
     }
 
     /**
@@ -80,13 +127,13 @@ public class ReviewDbStorageImpl implements ReviewStorage {
      *
      * @param review the specified as Review object with identifier to be updated in the storage
      *               will be updated only review content and review type
-     * @return the review as Review object
+     * @return the same review as Review object
      * @see Review
      */
     public Review update(Review review) {
         String sql = "UPDATE reviews SET content = ?, is_positive = ? WHERE review_id = ?";
         jdbcTemplate.update(sql, review.getContent(), review.getIsPositive(), review.getReviewId());
-        return get(review.getReviewId());
+        return review;
     }
 
     /**
@@ -104,44 +151,38 @@ public class ReviewDbStorageImpl implements ReviewStorage {
     }
 
     /**
-     * Returns as many reviews as specified in the query by count by film id, ordered by useful of review.
+     * Returns as many reviews as specified in the query by count by film id, ordered by useful of review,
+     * then by identifier. Served by one range scan of the (film_id, useful DESC, review_id) index.
      *
-     * @param filmId the specified as identifier of film
-     * @param count  is the amount of reviews returned
-     * @return a List containing the reviews id
+     * @param filmId      the specified as identifier of film
+     * @param count       is the amount of reviews returned
+     * @param afterUseful usefulness of the last review of the previous page, null for the first page
+     * @param afterId     identifier of the last review of the previous page, null for the first page
+     * @return a List containing the reviews
      * @see Review
      */
-    public List<Long> getAllByFilmId(Long filmId, Integer count) {
-        final String sql = "SELECT r.review_id, "
-                + " SUM( CASE WHEN  rl.is_useful IS NULL THEN  0 ELSE CASE WHEN  rl.is_useful THEN  1 ELSE -1 END END) "
-                + " AS uset "
-                + " FROM reviews AS r "
-                + " LEFT JOIN review_like AS rl ON r.review_id = rl.review_id "
-                + " WHERE r.film_id = ? "
-                + " GROUP BY r.review_id "
-                + " ORDER BY uset DESC "
-                + "LIMIT ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("review_id"), filmId, count);
-
+    public List<Review> getAllByFilmId(Long filmId, Integer count, Integer afterUseful, Long afterId) {
+        if (afterId == null) {
+            return jdbcTemplate.query(FIND_BY_FILM, this::mapRowToReview, filmId, count);
+        }
+        return jdbcTemplate.query(FIND_BY_FILM_AFTER, this::mapRowToReview, filmId, afterUseful, afterUseful, afterId, count);
     }
 
     /**
-     * Returns as many reviews as specified in the query by count, ordered by useful of review.
+     * Returns as many reviews as specified in the query by count, ordered by useful of review,
+     * then by identifier. Served by one scan of the (useful DESC, review_id) index.
      *
-     * @param count is the amount of reviews returned
-     * @return a List containing the reviews id
+     * @param count       is the amount of reviews returned
+     * @param afterUseful usefulness of the last review of the previous page, null for the first page
+     * @param afterId     identifier of the last review of the previous page, null for the first page
+     * @return a List containing the reviews
      * @see Review
      */
-    public List<Long> getAll(Integer count) {
-        final String sql = "SELECT r.review_id, "
-                + " SUM( CASE WHEN  rl.is_useful IS NULL THEN  0 ELSE CASE WHEN  rl.is_useful THEN  1 ELSE -1 END END) "
-                + " AS uset "
-                + " FROM reviews AS r "
-                + "LEFT JOIN review_like AS rl ON r.review_id = rl.review_id "
-                + " GROUP BY (r.review_id) "
-                + " ORDER BY uset DESC "
-                + " LIMIT ?";
-        return jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong("review_id"), count);
+    public List<Review> getAll(Integer count, Integer afterUseful, Long afterId) {
+        if (afterId == null) {
+            return jdbcTemplate.query(FIND_ALL, this::mapRowToReview, count);
+        }
+        return jdbcTemplate.query(FIND_ALL_AFTER, this::mapRowToReview, afterUseful, afterUseful, afterId, count);
     }
 
     /**
@@ -152,8 +193,7 @@ public class ReviewDbStorageImpl implements ReviewStorage {
      * @see Review
      */
     public Boolean containsIdReview(Long reviewId) {
-        final String sql = "SELECT review_id FROM reviews WHERE review_id = ?";
-        return jdbcTemplate.queryForList(sql, reviewId).size() > 0;
+        return jdbcTemplate.queryForObject(EXISTS_BY_ID, Boolean.class, reviewId);
     }
 
     /**
@@ -191,15 +231,14 @@ public class ReviewDbStorageImpl implements ReviewStorage {
      * @see Review
      */
     private Review mapRowToReview(ResultSet rs, int rowNum) throws SQLException {
-        Review review = Review.builder()
+        return Review.builder()
                 .reviewId(rs.getLong("review_id"))
                 .content(rs.getString("content"))
                 .isPositive(rs.getBoolean("is_positive"))
                 .userId(rs.getLong("user_id"))
                 .filmId(rs.getLong("film_id"))
+                .useful(rs.getInt("useful"))
                 .build();
-        review.setUseful(reviewLikeDbStorage.getResultUseful(review.getReviewId()));
-        return review;
     }
 
 }
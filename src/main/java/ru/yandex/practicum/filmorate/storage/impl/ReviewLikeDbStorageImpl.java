@@ -2,41 +2,56 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NoSuchReactFind;
 import ru.yandex.practicum.filmorate.model.Review;
 
+import java.util.List;
+
 /**
  * Class is provides database functionalities for review likes.
+ * Besides the REVIEW_LIKE rows it keeps the REVIEWS.USEFUL counter, which is used for ordering reviews.
  */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class ReviewLikeDbStorageImpl {
     /**
-     * @see JdbcTemplate
+     * lock of the review row until the end of the transaction, it serializes changes of reactions on the review
      */
-    private final JdbcTemplate jdbcTemplate;
+    public static final String LOCK_REVIEW = "SELECT useful FROM reviews WHERE review_id = ? FOR UPDATE";
 
     /**
-     * Return usefulness of review from storage by review id
-     *
-     * @param reviewId the specified as identifier of review
-     * @return the usefulness of review
-     * @see Review
+     * previous reaction of the user on the review
      */
-    public Integer getResultUseful(Long reviewId) {
-        final String sql = "SELECT SUM( CASE WHEN  rl.is_useful IS NULL "
-                + " THEN  0 ELSE CASE WHEN  rl.is_useful THEN  1 ELSE -1 END END) "
-                + " AS uset FROM reviews AS r LEFT JOIN review_like AS rl ON r.review_id = rl.review_id "
-                + " WHERE r.review_id = ? GROUP BY (r.review_id)";
-        return jdbcTemplate.queryForObject(sql
-                , (rs, rowNum) -> rs.getInt("uset")
-                , reviewId);
-    }
+    public static final String FIND_REACTION = "SELECT is_useful FROM review_like WHERE review_id = ? AND user_id = ?";
+
+    /**
+     * existence of the reaction of the user on the review
+     */
+    public static final String EXISTS_REACTION = "SELECT EXISTS (SELECT 1 FROM review_like WHERE review_id = ? AND user_id = ? AND is_useful = ?)";
+
+    /**
+     * change of the usefulness counter of the review
+     */
+    public static final String CHANGE_USEFUL = "UPDATE reviews SET useful = useful + ? WHERE review_id = ?";
+
+    /**
+     * @see JdbcTemplate
+     */
+    private final JdbcTemplate jdbcTemplate;
 
     /**
-     * User add reaction on review
+     * User add reaction on review. The reaction replaces the previous reaction of the user on the review,
+     * the usefulness counter of the review is changed by the difference in the same transaction.
+     * The review row is locked first, because a reaction row which does not exist yet cannot be locked,
+     * so concurrent first reactions of the same user would both see no previous reaction.
      *
      * @param idReview the specified as identifier of review to add a reaction on it
      * @param userId   the specified as identifier of user, which added a reaction
@@ -44,13 +59,22 @@ public class ReviewLikeDbStorageImpl {
      * @return does reaction add to review
      * @see Review
      */
+    @Transactional
     public Boolean addReaction(Long idReview, Long userId, Boolean isUseful) {
+        lockReview(idReview);
+        List<Boolean> previous = jdbcTemplate.queryForList(FIND_REACTION, Boolean.class, idReview, userId);
         final String sql = "MERGE INTO review_like ( review_id, user_id, is_useful ) VALUES ( ?, ? , ? )";
-        return jdbcTemplate.update(sql, idReview, userId, isUseful) > 0;
+        boolean added = jdbcTemplate.update(sql, idReview, userId, isUseful) > 0;
+        int delta = score(isUseful) - (previous.isEmpty() ? 0 : score(previous.get(0)));
+        if (delta != 0) {
+            changeUseful(idReview, delta);
+        }
+        return added;
     }
 
     /**
-     * User delete reaction on review
+     * User delete reaction on review. The usefulness counter of the review is changed in the same transaction
+     * under the lock of the review row.
      *
      * @param idReview the specified as identifier of review to delete a reaction on it
      * @param userId   the specified as identifier of user, which deleted a reaction
@@ -59,7 +83,9 @@ public class ReviewLikeDbStorageImpl {
      * @throws NoSuchReactFind if reaction by review id, user id and type wasn't found in database
      * @see Review
      */
+    @Transactional
     public Boolean deleteReaction(Long idReview, Long userId, Boolean isUseful) {
+        lockReview(idReview);
         if (!containsReaction(idReview, userId, isUseful)) {
             if (isUseful) throw new NoSuchReactFind("Пользователь c ID = " + userId
                     + " не оставлял положительной реакции на отзыв с ID = " + idReview);
@@ -67,7 +93,36 @@ public class ReviewLikeDbStorageImpl {
                     + " не оставлял отрицательной реакции на отзыв с ID = " + idReview);
         }
         final String sql = "DELETE FROM review_like WHERE review_id =? AND user_id = ? AND is_useful = ?";
-        return jdbcTemplate.update(sql, idReview, userId, isUseful) > 0;
+        if (jdbcTemplate.update(sql, idReview, userId, isUseful) == 0) {
+            return false;
+        }
+        changeUseful(idReview, -score(isUseful));
+        return true;
+    }
+
+    /**
+     * Rebuilds usefulness counters of the reviews from REVIEW_LIKE.
+     * Runs on application start and then periodically with the delay of
+     * {@code filmorate.reviews.reconcile-delay-millis}, so counters left inconsistent by a crash
+     * or by a change made outside the application are repaired.
+     *
+     * @return the number of reviews whose counter was corrected
+     * @see Review
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${filmorate.reviews.reconcile-delay-millis:600000}",
+            initialDelayString = "${filmorate.reviews.reconcile-delay-millis:600000}")
+    public int reconcileUseful() {
+        final String sql = "UPDATE reviews R SET useful = " +
+                "(SELECT COALESCE(SUM(CASE WHEN RL.is_useful THEN 1 ELSE -1 END), 0) " +
+                "FROM review_like RL WHERE RL.review_id = R.review_id) " +
+                "WHERE useful <> (SELECT COALESCE(SUM(CASE WHEN RL.is_useful THEN 1 ELSE -1 END), 0) " +
+                "FROM review_like RL WHERE RL.review_id = R.review_id)";
+        int corrected = jdbcTemplate.update(sql);
+        if (corrected > 0) {
+            log.warn("usefulness counters corrected for {} reviews", corrected);
+        }
+        return corrected;
     }
 
     /**
@@ -80,8 +135,19 @@ public class ReviewLikeDbStorageImpl {
      * @see Review
      */
     public Boolean containsReaction(Long idReview, Long userId, Boolean isUseful) {
-        final String sql = "SELECT review_id FROM review_like WHERE review_id = ? AND user_id = ? AND is_useful = ?";
-        return jdbcTemplate.queryForList(sql, idReview, userId, isUseful).size() > 0;
+        return jdbcTemplate.queryForObject(EXISTS_REACTION, Boolean.class, idReview, userId, isUseful);
+    }
+
+    private void lockReview(Long idReview) {
+        jdbcTemplate.queryForList(LOCK_REVIEW, Integer.class, idReview);
+    }
+
+    private void changeUseful(Long idReview, int delta) {
+        jdbcTemplate.update(CHANGE_USEFUL, delta, idReview);
+    }
+
+    private static int score(Boolean isUseful) {
+        return isUseful ? 1 : -1;
     }
 
 }
@@ -2,41 +2,127 @@ package ru.yandex.practicum.filmorate.storage.impl;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Primary;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.UserNotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
+import ru.yandex.practicum.filmorate.storage.cache.FilmCache;
+import ru.yandex.practicum.filmorate.storage.cache.UserCache;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SocialGraph;
+import ru.yandex.practicum.filmorate.storage.index.TimelineIndex;
 
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * Class is provides database functionalities for users.
+ * Lookups by identifier and existence checks are answered by the user cache.
+ *
+ * @see UserCache
  */
 @Component
 @Primary
 @RequiredArgsConstructor
 public class UserDbStorageImpl implements UserStorage {
+    /**
+     * user by identifier
+     */
+    public static final String FIND_BY_ID = "SELECT * FROM USERS WHERE user_id = ?";
+
+    /**
+     * users by the array of identifiers
+     */
+    public static final String FIND_BY_IDS = "SELECT * FROM USERS WHERE user_id = ANY(?)";
+
+    /**
+     * page of users after the identifier
+     */
+    public static final String FIND_PAGE = "SELECT * FROM USERS WHERE user_id > ? ORDER BY user_id LIMIT ?";
+
+    /**
+     * identifiers of friends of the user
+     */
+    public static final String FIND_FRIEND_IDS = "SELECT friend_id FROM friends WHERE user_id = ?";
+
+    /**
+     * friends of the user
+     */
+    public static final String FIND_FRIENDS = "SELECT U.* FROM FRIENDS AS F INNER JOIN USERS AS U ON F.FRIEND_ID = U.USER_ID WHERE F.USER_ID = ?";
+
+    /**
+     * identifiers of films liked by the user
+     */
+    public static final String FIND_LIKED_FILM_IDS = "SELECT film_id FROM film_likes WHERE user_id = ?";
+
+    /**
+     * decrement of likes counters of the films liked by the user
+     */
+    public static final String DECREMENT_LIKES_OF_USER = "UPDATE films SET likes_count = likes_count - 1 "
+            + "WHERE film_id IN (SELECT film_id FROM film_likes WHERE user_id = ?)";
+
+    /**
+     * removal of the reactions of the user from the usefulness counters of the reviews
+     */
+    public static final String SUBTRACT_REACTIONS_OF_USER = "UPDATE reviews R SET useful = useful - "
+            + "(SELECT CASE WHEN RL.is_useful THEN 1 ELSE -1 END FROM review_like RL "
+            + "WHERE RL.review_id = R.review_id AND RL.user_id = ?) "
+            + "WHERE review_id IN (SELECT review_id FROM review_like WHERE user_id = ?)";
+
+    /**
+     * number of users read together while streaming
+     */
+    private static final int STREAM_CHUNK_SIZE = 100;
+
     /**
      * @see JdbcTemplate
      */
     private final JdbcTemplate jdbcTemplate;
 
+    private final FilmStorage filmStorage;
+
     /**
-     * @see FriendsStorageImpl
+     * @see PopularityIndex
      */
-    private final FriendsStorageImpl friendsStorage;
-    private final FilmStorage filmStorage;
+    private final PopularityIndex popularityIndex;
+
+    /**
+     * @see LikesIndex
+     */
+    private final LikesIndex likesIndex;
+
+    /**
+     * @see FilmCache
+     */
+    private final FilmCache filmCache;
+
+    /**
+     * @see UserCache
+     */
+    private final UserCache userCache;
+
+    /**
+     * @see SocialGraph
+     */
+    private final SocialGraph socialGraph;
+
+    /**
+     * @see TimelineIndex
+     */
+    private final TimelineIndex timelineIndex;
 
     /**
      * Find and returns all users in the storage
@@ -50,6 +136,43 @@ public class UserDbStorageImpl implements UserStorage {
         return jdbcTemplate.query(sql, this::mapRowToUser);
     }
 
+    /**
+     * Find and returns one page of users ordered by identifier
+     *
+     * @param after identifier of the last user of the previous page, users with greater identifiers are returned
+     * @param limit maximum number of users in the page
+     * @return a List of users as User objects with identifiers greater than after
+     * @see User
+     */
+    @Override
+    public List<User> findPage(Long after, int limit) {
+        return jdbcTemplate.query(FIND_PAGE, this::mapRowToUser, after, limit);
+    }
+
+    /**
+     * Reads all users ordered by identifier page by page and passes them to the consumer
+     * in chunks of {@value #STREAM_CHUNK_SIZE}, so only one chunk is kept in memory.
+     * Every page is read by a keyset query, as films are, so the connection is returned to the pool
+     * before the consumer writes the chunk to a client which may read slowly
+     *
+     * @param consumer receiver of the chunks of users
+     * @see User
+     * @see FilmDbStorageImpl#streamAll(Consumer)
+     */
+    @Override
+    public void streamAll(Consumer<List<User>> consumer) {
+        long after = 0;
+        List<User> chunk = findPage(after, STREAM_CHUNK_SIZE);
+        while (!chunk.isEmpty()) {
+            consumer.accept(chunk);
+            if (chunk.size() < STREAM_CHUNK_SIZE) {
+                return;
+            }
+            after = chunk.get(chunk.size() - 1).getId();
+            chunk = findPage(after, STREAM_CHUNK_SIZE);
+        }
+    }
+
     /**
      * Add user to storage
      *
@@ -68,11 +191,13 @@ public class UserDbStorageImpl implements UserStorage {
                 .addValue("birthday", user.getBirthday());
         Number id = simpleJdbcInsert.executeAndReturnKey(parametersU);
         user.setId((Long) id);
+        userCache.onUserCreated(user.getId());
         return user;
     }
 
     /**
-     * Update user data in the storage
+     * Update user data in the storage. Friends of the user are not changed,
+     * they are managed by {@link FriendsStorageImpl#addFriend(Long, Long)} and {@link FriendsStorageImpl#removeFriend(Long, Long)}
      *
      * @param user the specified as User object with identifier to be updated in the storage
      * @return the user as User object updated in the storage
@@ -81,48 +206,76 @@ public class UserDbStorageImpl implements UserStorage {
      */
     @Override
     public User update(User user) {
-        findUserById(user.getId());
+        if (!userCache.contains(user.getId())) {
+            throw new UserNotFoundException(user.getId() + " id - user not found");
+        }
         String sql = "UPDATE users SET user_name =?," +
                 "login=?, email=?," +
                 "birthday=? WHERE user_id=?";
         jdbcTemplate.update(sql, user.getName(), user.getLogin(),
                 user.getEmail(), user.getBirthday(), user.getId());
-        friendsStorage.updateFriends(user);
-        return user;
+        userCache.invalidate(user.getId());
+        return findUserById(user.getId());
     }
 
     /**
-     * Find and return user data from the storage
+     * Find and return user data from the user cache, an unknown identifier is rejected without a query
      *
      * @param userId the specified as identifier of user to get from the storage
      * @return the user as User object saved in storage with identifier equals userID
      * @throws UserNotFoundException if user not found by ib
      * @see User
+     * @see UserCache
      */
     @Override
     public User findUserById(Long userId) {
-        String sql = "SELECT U.*, F.friend_id FROM USERS AS U\n" +
-                "LEFT JOIN FRIENDS F on U.USER_ID = F.USER_ID\n" +
-                "WHERE U.USER_ID = ?";
-        try {
-            return jdbcTemplate.queryForObject(sql, this::mapRowToUser, userId);
-        } catch (EmptyResultDataAccessException e) {
+        if (!userCache.contains(userId)) {
             throw new UserNotFoundException(userId + " id - user not found");
         }
+        return userCache.get(userId, this::loadUserById);
+    }
+
+    /**
+     * Load user data with identifiers of friends from the storage
+     *
+     * @param userId the specified as identifier of user to get from the storage
+     * @return the user as User object saved in storage with identifier equals userID
+     * @throws UserNotFoundException if user not found by ib
+     * @see User
+     */
+    private User loadUserById(Long userId) {
+        User user = jdbcTemplate.query(FIND_BY_ID, this::mapRowToUser, userId).stream()
+                .findFirst()
+                .orElseThrow(() -> new UserNotFoundException(userId + " id - user not found"));
+        user.getFriends().addAll(jdbcTemplate.queryForList(FIND_FRIEND_IDS, Long.class, userId));
+        return user;
     }
 
     /**
-     * Delete user from the storage
+     * Delete user from the storage. Likes and reactions of the user are removed by the cascade,
+     * so the likes counters of the films and the usefulness counters of the reviews are changed before
+     * in the same transaction, the same way as when a single like or reaction is removed
      *
      * @param userId the specified as identifier of user to remove from the storage
      * @return the user as User object removed from storage with identifier equals userId
      * @see User
+     * @see ReviewLikeDbStorageImpl
      */
     @Override
+    @Transactional
     public User deleteUserById(Long userId) {
         User user = findUserById(userId);
+        List<Long> likedFilms = jdbcTemplate.queryForList(FIND_LIKED_FILM_IDS, Long.class, userId);
+        jdbcTemplate.update(DECREMENT_LIKES_OF_USER, userId);
+        jdbcTemplate.update(SUBTRACT_REACTIONS_OF_USER, userId, userId);
         String sql = "DELETE FROM users WHERE user_id=?";
         jdbcTemplate.update(sql, userId);
+        likedFilms.forEach(filmId -> popularityIndex.onLikesChanged(filmId, -1));
+        likesIndex.onUserDeleted(userId);
+        filmCache.invalidateAll(likedFilms);
+        userCache.onUserDeleted(userId);
+        timelineIndex.onUserDeleted(userId);
+        socialGraph.onUserDeleted(userId);
         return user;
     }
 
@@ -135,75 +288,50 @@ public class UserDbStorageImpl implements UserStorage {
      */
     @Override
     public List<User> allMyFriends(Long id) {
-        final String sql = "select U.* from FRIENDS AS F " +
-                "inner join USERS AS U on F.FRIEND_ID= U.USER_ID where F.USER_ID = ?";
-        return jdbcTemplate.query(sql, this::mapRowToUser, id);
+        return jdbcTemplate.query(FIND_FRIENDS, this::mapRowToUser, id);
+    }
+
+    /**
+     * Returns several users by one query, the same way as {@link #allMyFriends(Long)} without friends of the users
+     *
+     * @param ids the specified as identifiers of users
+     * @return a List of users as User objects in the same order as identifiers, unknown identifiers are skipped
+     * @see User
+     */
+    @Override
+    public List<User> findUsersByIds(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, User> users = jdbcTemplate.query(FIND_BY_IDS,
+                        ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())),
+                        this::mapRowToUser)
+                .stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        return ids.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
     /**
-     * Return does the database contain the user by id
+     * Return does the storage contain the user by id, answered by the user cache without a query
      *
      * @param userId the specified as identifier of the user
      * @return does database contain the user by id
      * @see Review
+     * @see UserCache#contains(Long)
      */
     public Boolean containsIdUser(Long userId) {
-        final String sql = "SELECT user_id FROM users WHERE user_id = ?";
-        return jdbcTemplate.queryForList(sql, userId).size() > 0;
+        return userCache.contains(userId);
     }
     
     /**
      * @param id the specified ID of the user to be searched.
-     * @returns a list of movies recommended for viewing, for the user
+     * @returns a list of movies recommended for viewing, for the user,
+     * found by the like index among users who share at least one like with the user
+     * @see LikesIndex#recommendations(Long)
      */
     @Override
     public List<Film> recommendations(Long id) {
-        List<Film> result = new ArrayList<>();
-        Map<Long, Set<Long>> likes = getLikes();
-        if (!likes.containsKey(id) || likes.size() <= 1) {
-            return result;
-        }
-        Set<Long> targetSet = likes.get(id);
-        likes.remove(id);
-        int maxIntersectionSize = 0;
-        Long recommendUserId = null;
-        for (Map.Entry<Long, Set<Long>> uid : likes.entrySet()) {
-            if (targetSet.equals(uid.getValue())) {
-                continue;
-            }
-            Set<Long> intersection = new HashSet<>(uid.getValue());
-            intersection.retainAll(targetSet);
-            if (intersection.size() > maxIntersectionSize) {
-                maxIntersectionSize = intersection.size();
-                recommendUserId = uid.getKey();
-            }
-        }
-        if (recommendUserId != null) {
-            Set<Long> set = new HashSet<>(likes.get(recommendUserId));
-            set.removeAll(targetSet);
-            for (Long filmId : set) {
-                result.add(filmStorage.findFilmById(filmId));
-            }
-        }
-        return result;
-    }
-
-    /**
-     * @returns HashMap where the key is the user ID, the value is the movies that the user liked
-     */
-    private Map<Long, Set<Long>> getLikes() {
-        Map<Long, Set<Long>> likes = new HashMap<>();
-        jdbcTemplate.query("SELECT FILM_ID, USER_ID FROM FILM_LIKES",
-                (rs, rowNum) -> {
-                    Long userId = rs.getLong("USER_ID");
-                    Long filmId = rs.getLong("FILM_ID");
-                    if (!likes.containsKey(userId)) {
-                        likes.put(userId, new HashSet<>());
-                    }
-                    likes.get(userId).add(filmId);
-                    return null;
-                });
-        return likes;
+        return filmStorage.findFilmsByIds(likesIndex.recommendations(id));
     }
 
     /**
@@ -211,27 +339,17 @@ public class UserDbStorageImpl implements UserStorage {
      *
      * @param rs the specified as identifier of ResultSet
      * @param i  the specified as number of record from ResultSet
-     * @return user as User object with friends
+     * @return user as User object with empty friends
      * @see User
      */
     private User mapRowToUser(ResultSet rs, int i) throws SQLException {
-        ResultSetMetaData rsmd = rs.getMetaData();
-        Set<Long> fr = new HashSet<>();
-        User user = User.builder()
+        return User.builder()
                 .id(rs.getLong("user_id"))
                 .name(rs.getString("user_name"))
                 .login(rs.getString("login"))
                 .email(rs.getString("email"))
                 .birthday(rs.getDate("birthday").toLocalDate())
+                .friends(new HashSet<>())
                 .build();
-        if (rsmd.getColumnCount() > 5) {
-            do {
-                if (rs.getLong("friend_id") != 0) {
-                    fr.add(rs.getLong("friend_id"));
-                }
-            } while (rs.next());
-        }
-        user.setFriends(fr);
-        return user;
     }
 }
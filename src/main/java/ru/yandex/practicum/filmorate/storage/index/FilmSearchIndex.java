@@ -0,0 +1,302 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.SearchParam;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+
+import javax.annotation.PostConstruct;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory search index over film titles and director names.
+ * Substring search is answered by trigram indexes, results are ordered by likes from the popularity index.
+ * Autocomplete suggestions are answered by a prefix trie holding both films and directors
+ * scored by likes, the scores follow the changes of likes reported by the popularity index.
+ * The index is loaded from the database on start and then updated by the storages on every change
+ * of films and directors.
+ *
+ * @see TrigramIndex
+ * @see PrefixTrie
+ * @see PopularityIndex
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FilmSearchIndex {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final PopularityIndex popularityIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TrigramIndex titles = new TrigramIndex();
+
+    private final TrigramIndex directorNames = new TrigramIndex();
+
+    /**
+     * keys of films are even and keys of directors are odd, see {@link #filmKey(long)} and {@link #directorKey(long)}
+     */
+    private final PrefixTrie prefixes = new PrefixTrie();
+
+    private final Map<Long, Set<Long>> filmDirectors = new HashMap<>();
+
+    private final Map<Long, Set<Long>> directorFilms = new HashMap<>();
+
+    /**
+     * Subscribes to changes of likes and loads the index
+     */
+    @PostConstruct
+    public void init() {
+        popularityIndex.addLikesListener(this::onLikesChanged);
+        rebuild();
+    }
+
+    /**
+     * Loads film titles, director names and links between them from the database.
+     * Films are suggested by their likes and directors by the sum of likes of their films
+     */
+    public void rebuild() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            prefixes.clear();
+            filmDirectors.clear();
+            directorFilms.clear();
+            jdbcTemplate.query("SELECT film_id, film_name FROM films",
+                    rs -> {
+                        long filmId = rs.getLong("film_id");
+                        titles.put(filmId, rs.getString("film_name"));
+                        prefixes.load(filmKey(filmId), rs.getString("film_name"), popularityIndex.likes(filmId));
+                    });
+            jdbcTemplate.query("SELECT film_id, director_id FROM film_directors",
+                    rs -> {
+                        link(rs.getLong("film_id"), rs.getLong("director_id"));
+                    });
+            jdbcTemplate.query("SELECT director_id, director_name FROM directors",
+                    rs -> {
+                        long directorId = rs.getLong("director_id");
+                        directorNames.put(directorId, rs.getString("director_name"));
+                        prefixes.load(directorKey(directorId), rs.getString("director_name"), directorScore(directorId));
+                    });
+            prefixes.refreshAll();
+            log.debug("search index loaded: {} films, {} directors", filmDirectors.size(), directorFilms.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Search for films by director name or title.
+     * Keeps the semantics of the SQL search: case-insensitive substring match,
+     * by title when directors are not requested.
+     *
+     * @param text         keyword
+     * @param searchParams search parameters
+     * @return List of film identifiers ordered by likes descending, then by identifier
+     * @see SearchParam
+     */
+    public List<Long> search(String text, EnumSet<SearchParam> searchParams) {
+        Set<Long> found = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            boolean byDirector = searchParams.contains(SearchParam.director);
+            if (searchParams.contains(SearchParam.title) || !byDirector) {
+                found.addAll(titles.search(text));
+            }
+            if (byDirector) {
+                for (Long directorId : directorNames.search(text)) {
+                    found.addAll(directorFilms.getOrDefault(directorId, Collections.emptySet()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return found.stream()
+                .sorted(Comparator.comparingInt(popularityIndex::likes).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Suggests films and directors whose name or one of its words starts with the prefix
+     *
+     * @param prefix the typed prefix
+     * @param limit  maximum number of suggestions
+     * @return List of Suggestion ordered by popularity descending, then by name
+     * @see Suggestion
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return prefixes.top(prefix, limit).stream()
+                    .map(this::toSuggestion)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes title and directors of created or updated film
+     *
+     * @param film the saved film
+     */
+    public void onFilmSaved(Film film) {
+        lock.writeLock().lock();
+        try {
+            long key = filmKey(film.getId());
+            int score = prefixes.name(key) == null ? popularityIndex.likes(film.getId()) : prefixes.score(key);
+            titles.put(film.getId(), film.getName());
+            unlinkFilm(film.getId());
+            prefixes.put(key, film.getName(), score);
+            if (film.getDirectors() != null) {
+                film.getDirectors().forEach(director -> link(film.getId(), director.getId()));
+            }
+            addToDirectors(film.getId(), score);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes film from the index
+     *
+     * @param filmId identifier of removed film
+     */
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            titles.remove(filmId);
+            unlinkFilm(filmId);
+            prefixes.remove(filmKey(filmId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes name of created or updated director
+     *
+     * @param director the saved director
+     */
+    public void onDirectorSaved(Director director) {
+        lock.writeLock().lock();
+        try {
+            directorNames.put(director.getId(), director.getName());
+            prefixes.put(directorKey(director.getId()), director.getName(), directorScore(director.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes director and its links to films from the index
+     *
+     * @param directorId identifier of removed director
+     */
+    public void onDirectorDeleted(Long directorId) {
+        lock.writeLock().lock();
+        try {
+            directorNames.remove(directorId);
+            prefixes.remove(directorKey(directorId));
+            Set<Long> films = directorFilms.remove(directorId);
+            if (films != null) {
+                films.forEach(filmId -> filmDirectors.getOrDefault(filmId, new HashSet<>()).remove(directorId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the film and its directors in the suggestions after a change of likes
+     *
+     * @param filmId identifier of the film
+     * @param delta  applied change of the number of likes
+     */
+    private void onLikesChanged(long filmId, int delta) {
+        lock.writeLock().lock();
+        try {
+            if (prefixes.name(filmKey(filmId)) == null) {
+                return;
+            }
+            prefixes.setScore(filmKey(filmId), prefixes.score(filmKey(filmId)) + delta);
+            addToDirectors(filmId, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Suggestion toSuggestion(long key) {
+        return Suggestion.builder()
+                .type((key & 1) == 0 ? SuggestionType.film : SuggestionType.director)
+                .id(key >>> 1)
+                .name(prefixes.name(key))
+                .popularity(prefixes.score(key))
+                .build();
+    }
+
+    private int directorScore(long directorId) {
+        return directorFilms.getOrDefault(directorId, Collections.emptySet()).stream()
+                .mapToInt(filmId -> prefixes.score(filmKey(filmId)))
+                .sum();
+    }
+
+    private void addToDirectors(long filmId, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        for (Long directorId : filmDirectors.getOrDefault(filmId, Collections.emptySet())) {
+            long key = directorKey(directorId);
+            prefixes.setScore(key, prefixes.score(key) + delta);
+        }
+    }
+
+    private static long filmKey(long filmId) {
+        return filmId << 1;
+    }
+
+    private static long directorKey(long directorId) {
+        return (directorId << 1) | 1;
+    }
+
+    private void link(Long filmId, Long directorId) {
+        filmDirectors.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+        directorFilms.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+    }
+
+    private void unlinkFilm(Long filmId) {
+        addToDirectors(filmId, -prefixes.score(filmKey(filmId)));
+        Set<Long> directors = filmDirectors.remove(filmId);
+        if (directors == null) {
+            return;
+        }
+        for (Long directorId : directors) {
+            Set<Long> films = directorFilms.get(directorId);
+            if (films != null) {
+                films.remove(filmId);
+                if (films.isEmpty()) {
+                    directorFilms.remove(directorId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory like matrix kept as compressed bitmaps in both directions:
+ * one bitmap of liked film identifiers per user and one bitmap of user identifiers per film.
+ * Intersections, unions and cardinalities are computed on the bitmaps without boxing.
+ * Bitmaps do not cache cumulative cardinalities, because the cache is filled lazily by reads
+ * and the bitmaps are read concurrently under the read lock.
+ * The index is loaded from the database on start and then updated by every committed change of likes
+ * received from the outbox.
+ *
+ * @see Roaring64NavigableMap
+ * @see PopularityIndex
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikesIndex implements OutboxSubscriber {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Roaring64NavigableMap> filmsByUser = new HashMap<>();
+
+    private final Map<Long, Roaring64NavigableMap> usersByFilm = new HashMap<>();
+
+    /**
+     * Loads the index from the database and registers the memory footprint gauge
+     */
+    @PostConstruct
+    public void init() {
+        rebuild();
+        Gauge.builder("filmorate.likes.index.memory", this, LikesIndex::estimatedFootprintBytes)
+                .description("Estimated heap size of the like bitmaps")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops the index and loads it again from FILM_LIKES
+     */
+    public void rebuild() {
+        Map<Long, Roaring64NavigableMap> films = new HashMap<>();
+        Map<Long, Roaring64NavigableMap> users = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, user_id FROM film_likes",
+                rs -> {
+                    long filmId = rs.getLong("film_id");
+                    long userId = rs.getLong("user_id");
+                    films.computeIfAbsent(userId, id -> newBitmap()).addLong(filmId);
+                    users.computeIfAbsent(filmId, id -> newBitmap()).addLong(userId);
+                });
+        films.values().forEach(Roaring64NavigableMap::runOptimize);
+        users.values().forEach(Roaring64NavigableMap::runOptimize);
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+            filmsByUser.putAll(films);
+            usersByFilm.putAll(users);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("likes index loaded: {} users, {} films, ~{} bytes",
+                filmsByUser.size(), usersByFilm.size(), estimatedFootprintBytes());
+    }
+
+    /**
+     * Intersection of liked films of two users computed by a container-wise AND
+     * of a copy of the smaller bitmap with the larger one
+     *
+     * @param userId  identifier of the first user
+     * @param otherId identifier of the second user
+     * @return identifiers of films liked by both users in ascending order
+     */
+    public List<Long> commonFilms(Long userId, Long otherId) {
+        lock.readLock().lock();
+        try {
+            Roaring64NavigableMap films = filmsByUser.get(userId);
+            Roaring64NavigableMap otherFilms = filmsByUser.get(otherId);
+            if (films == null || otherFilms == null) {
+                return new ArrayList<>();
+            }
+            return toList(and(films, otherFilms));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cardinality of the users bitmap of the film
+     *
+     * @param filmId identifier of the film
+     * @return number of users who liked the film
+     */
+    public long likesCount(Long filmId) {
+        lock.readLock().lock();
+        try {
+            Roaring64NavigableMap users = usersByFilm.get(filmId);
+            return users == null ? 0 : users.getLongCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds films liked by the nearest neighbour of the user and not liked by the user.
+     * Neighbours are the union of users of the films liked by the user, so only users sharing
+     * at least one like are scored. The nearest neighbour is the one with the largest number of common likes,
+     * the lowest identifier wins a tie. Users who liked exactly the same films have nothing to recommend
+     * and are skipped.
+     *
+     * @param userId identifier of the user
+     * @return identifiers of recommended films in ascending order, empty if there is no neighbour
+     */
+    public List<Long> recommendations(Long userId) {
+        lock.readLock().lock();
+        try {
+            Roaring64NavigableMap target = filmsByUser.get(userId);
+            if (target == null) {
+                return new ArrayList<>();
+            }
+            Roaring64NavigableMap neighbours = newBitmap();
+            LongIterator films = target.getLongIterator();
+            while (films.hasNext()) {
+                Roaring64NavigableMap users = usersByFilm.get(films.next());
+                if (users != null) {
+                    neighbours.or(users);
+                }
+            }
+            neighbours.removeLong(userId);
+            long targetSize = target.getLongCardinality();
+            Roaring64NavigableMap best = null;
+            long bestCount = 0;
+            LongIterator it = neighbours.getLongIterator();
+            while (it.hasNext()) {
+                Roaring64NavigableMap other = filmsByUser.get(it.next());
+                long count = andCardinality(target, other);
+                if (count == targetSize && other.getLongCardinality() == targetSize) {
+                    continue;
+                }
+                if (count > bestCount) {
+                    best = other;
+                    bestCount = count;
+                }
+            }
+            if (best == null) {
+                return new ArrayList<>();
+            }
+            Roaring64NavigableMap recommended = copyOf(best);
+            recommended.andNot(target);
+            return toList(recommended);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a committed like or removal of like
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() != EventType.LIKE) {
+            return;
+        }
+        if (event.getOperation() == OperationType.ADD) {
+            onLikeAdded(event.getEntityId(), event.getUserId());
+        } else {
+            onLikeRemoved(event.getEntityId(), event.getUserId());
+        }
+    }
+
+    /**
+     * Adds the like of the user to the film
+     *
+     * @param filmId identifier of the film
+     * @param userId identifier of the user
+     */
+    public void onLikeAdded(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.computeIfAbsent(userId, id -> newBitmap()).addLong(filmId);
+            usersByFilm.computeIfAbsent(filmId, id -> newBitmap()).addLong(userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the like of the user from the film
+     *
+     * @param filmId identifier of the film
+     * @param userId identifier of the user
+     */
+    public void onLikeRemoved(Long filmId, Long userId) {
+        lock.writeLock().lock();
+        try {
+            removeFrom(filmsByUser, userId, filmId);
+            removeFrom(usersByFilm, filmId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all likes of the deleted film
+     *
+     * @param filmId identifier of removed film
+     */
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            Roaring64NavigableMap users = usersByFilm.remove(filmId);
+            if (users != null) {
+                users.forEach(userId -> removeFrom(filmsByUser, userId, filmId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all likes of the deleted user
+     *
+     * @param userId identifier of removed user
+     */
+    public void onUserDeleted(Long userId) {
+        lock.writeLock().lock();
+        try {
+            Roaring64NavigableMap films = filmsByUser.remove(userId);
+            if (films != null) {
+                films.forEach(filmId -> removeFrom(usersByFilm, filmId, userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return estimated number of bytes taken by the bitmaps in the heap
+     */
+    public long estimatedFootprintBytes() {
+        lock.readLock().lock();
+        try {
+            return filmsByUser.values().stream().mapToLong(Roaring64NavigableMap::getLongSizeInBytes).sum()
+                    + usersByFilm.values().stream().mapToLong(Roaring64NavigableMap::getLongSizeInBytes).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long andCardinality(Roaring64NavigableMap first, Roaring64NavigableMap second) {
+        return and(first, second).getLongCardinality();
+    }
+
+    /**
+     * @return new bitmap with the intersection, the smaller bitmap is copied and intersected with the larger one
+     */
+    private static Roaring64NavigableMap and(Roaring64NavigableMap first, Roaring64NavigableMap second) {
+        boolean firstSmaller = first.getLongSizeInBytes() <= second.getLongSizeInBytes();
+        Roaring64NavigableMap result = copyOf(firstSmaller ? first : second);
+        result.and(firstSmaller ? second : first);
+        return result;
+    }
+
+    private static void removeFrom(Map<Long, Roaring64NavigableMap> map, long key, long value) {
+        Roaring64NavigableMap values = map.get(key);
+        if (values == null) {
+            return;
+        }
+        values.removeLong(value);
+        if (values.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    /**
+     * @return empty bitmap of unsigned identifiers without the cache of cumulative cardinalities
+     */
+    private static Roaring64NavigableMap newBitmap() {
+        return new Roaring64NavigableMap(false, false);
+    }
+
+    private static Roaring64NavigableMap copyOf(Roaring64NavigableMap bitmap) {
+        Roaring64NavigableMap copy = newBitmap();
+        copy.or(bitmap);
+        return copy;
+    }
+
+    private static List<Long> toList(Roaring64NavigableMap bitmap) {
+        List<Long> ids = new ArrayList<>(bitmap.getIntCardinality());
+        bitmap.forEach(ids::add);
+        return ids;
+    }
+}
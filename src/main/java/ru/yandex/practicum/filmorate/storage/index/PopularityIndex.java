@@ -0,0 +1,345 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory index of films ordered by number of likes.
+ * Every film is kept in the global bucket, in the bucket of its release year,
+ * in the bucket of every its genre and in the bucket of every pair genre and year,
+ * so the most popular films with any combination of filters are read from the head of one sorted set.
+ * The index is loaded from the database on start and then updated by the storages on every change of films
+ * and by every committed change of likes received from the outbox.
+ *
+ * @see Film
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PopularityIndex implements OutboxSubscriber {
+
+    /**
+     * the value of genre or year in the bucket key, which means "any"
+     */
+    private static final int ANY = 0;
+
+    /**
+     * rough size in bytes of one film entry with its HashMap node
+     */
+    private static final long FILM_ENTRY_BYTES = 96;
+
+    /**
+     * rough size in bytes of one TreeSet node
+     */
+    private static final long BUCKET_ENTRY_BYTES = 40;
+
+    /**
+     * rough size in bytes of one bucket with its HashMap node
+     */
+    private static final long BUCKET_BYTES = 120;
+
+    private static final Comparator<Entry> BY_LIKES = Comparator
+            .comparingInt((Entry e) -> e.likes).reversed()
+            .thenComparingLong(e -> e.filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, Entry> films = new HashMap<>();
+
+    private final Map<Long, NavigableSet<Entry>> buckets = new HashMap<>();
+
+    private final List<LikesListener> likesListeners = new CopyOnWriteArrayList<>();
+
+    private long bucketEntries;
+
+    /**
+     * Loads the index from the database and registers the memory footprint gauge
+     */
+    @PostConstruct
+    public void init() {
+        rebuild();
+        Gauge.builder("filmorate.popularity.index.memory", this, PopularityIndex::estimatedFootprintBytes)
+                .description("Estimated heap size of the popularity index")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops the index and loads it again from FILMS, FILM_LIKES and FILM_GENRE
+     */
+    public void rebuild() {
+        Map<Long, Entry> loaded = new HashMap<>();
+        jdbcTemplate.query("SELECT F.film_id, EXTRACT(YEAR FROM F.release_date) AS release_year, " +
+                        "(SELECT COUNT(*) FROM film_likes FL WHERE FL.film_id = F.film_id) AS likes FROM films F",
+                rs -> {
+                    Entry entry = new Entry(rs.getLong("film_id"));
+                    entry.year = rs.getInt("release_year");
+                    entry.likes = rs.getInt("likes");
+                    loaded.put(entry.filmId, entry);
+                });
+        Map<Long, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query("SELECT film_id, genre_id FROM film_genre",
+                rs -> {
+                    genres.computeIfAbsent(rs.getLong("film_id"), id -> new ArrayList<>()).add(rs.getInt("genre_id"));
+                });
+        lock.writeLock().lock();
+        try {
+            films.clear();
+            buckets.clear();
+            bucketEntries = 0;
+            for (Entry entry : loaded.values()) {
+                entry.genres = genres.getOrDefault(entry.filmId, List.of()).stream().mapToInt(Integer::intValue).toArray();
+                films.put(entry.filmId, entry);
+                link(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("popularity index loaded: {} films, {} buckets, ~{} bytes",
+                films.size(), buckets.size(), estimatedFootprintBytes());
+    }
+
+    /**
+     * Returns identifiers of the most liked films
+     *
+     * @param count   count of films
+     * @param genreId id of genre or null for any genre
+     * @param year    release year or null for any year
+     * @return List of film identifiers ordered by likes descending, then by identifier
+     */
+    public List<Long> top(int count, Integer genreId, Integer year) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> bucket = buckets.get(key(genreId == null ? ANY : genreId, year == null ? ANY : year));
+            List<Long> ids = new ArrayList<>(Math.min(count, bucket == null ? 0 : bucket.size()));
+            if (bucket == null) {
+                return ids;
+            }
+            Iterator<Entry> it = bucket.iterator();
+            while (ids.size() < count && it.hasNext()) {
+                ids.add(it.next().filmId);
+            }
+            return ids;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of likes of the film
+     *
+     * @param filmId identifier of the film
+     * @return number of likes, 0 for unknown film
+     */
+    public int likes(Long filmId) {
+        lock.readLock().lock();
+        try {
+            Entry entry = films.get(filmId);
+            return entry == null ? 0 : entry.likes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds new film to the index or moves existing one to the buckets of its current year and genres
+     *
+     * @param film created or updated film
+     */
+    public void onFilmSaved(Film film) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = films.get(film.getId());
+            if (entry == null) {
+                entry = new Entry(film.getId());
+                films.put(entry.filmId, entry);
+            } else {
+                unlink(entry);
+            }
+            entry.year = film.getReleaseDate() == null ? ANY : film.getReleaseDate().getYear();
+            entry.genres = film.getGenres() == null
+                    ? new int[0]
+                    : film.getGenres().stream().mapToInt(Genre::getId).distinct().toArray();
+            link(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes film from the index
+     *
+     * @param filmId identifier of removed film
+     */
+    public void onFilmDeleted(Long filmId) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = films.remove(filmId);
+            if (entry != null) {
+                unlink(entry);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Moves the film after a committed like or removal of like
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() != EventType.LIKE) {
+            return;
+        }
+        onLikesChanged(event.getEntityId(), event.getOperation() == OperationType.ADD ? 1 : -1);
+    }
+
+    /**
+     * Changes the number of likes of the film and notifies the listeners after releasing the lock
+     *
+     * @param filmId identifier of the film
+     * @param delta  number of added likes, negative for removed
+     */
+    public void onLikesChanged(Long filmId, int delta) {
+        int applied;
+        lock.writeLock().lock();
+        try {
+            Entry entry = films.get(filmId);
+            if (entry == null) {
+                return;
+            }
+            unlink(entry);
+            int likes = Math.max(0, entry.likes + delta);
+            applied = likes - entry.likes;
+            entry.likes = likes;
+            link(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (applied != 0) {
+            likesListeners.forEach(listener -> listener.onLikesChanged(filmId, applied));
+        }
+    }
+
+    /**
+     * Registers a listener of changes of likes, used by indexes keeping scores derived from likes.
+     * The listener receives the applied change, so changes may be delivered in any order
+     *
+     * @param listener the listener
+     * @see FilmSearchIndex
+     */
+    public void addLikesListener(LikesListener listener) {
+        likesListeners.add(listener);
+    }
+
+    /**
+     * @return estimated number of bytes taken by the index in the heap
+     */
+    public long estimatedFootprintBytes() {
+        lock.readLock().lock();
+        try {
+            long genres = films.values().stream().mapToLong(e -> e.genres.length).sum();
+            return films.size() * FILM_ENTRY_BYTES + genres * Integer.BYTES
+                    + bucketEntries * BUCKET_ENTRY_BYTES + buckets.size() * BUCKET_BYTES;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void link(Entry entry) {
+        for (long key : keys(entry)) {
+            buckets.computeIfAbsent(key, k -> new TreeSet<>(BY_LIKES)).add(entry);
+            bucketEntries++;
+        }
+    }
+
+    private void unlink(Entry entry) {
+        for (long key : keys(entry)) {
+            NavigableSet<Entry> bucket = buckets.get(key);
+            if (bucket != null && bucket.remove(entry)) {
+                bucketEntries--;
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+        }
+    }
+
+    private long[] keys(Entry entry) {
+        boolean hasYear = entry.year != ANY;
+        long[] keys = new long[(1 + entry.genres.length) * (hasYear ? 2 : 1)];
+        int i = 0;
+        keys[i++] = key(ANY, ANY);
+        if (hasYear) {
+            keys[i++] = key(ANY, entry.year);
+        }
+        for (int genre : entry.genres) {
+            keys[i++] = key(genre, ANY);
+            if (hasYear) {
+                keys[i++] = key(genre, entry.year);
+            }
+        }
+        return keys;
+    }
+
+    private static long key(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Listener of changes of the number of likes
+     */
+    @FunctionalInterface
+    public interface LikesListener {
+
+        /**
+         * @param filmId identifier of the film
+         * @param delta  applied change of the number of likes
+         */
+        void onLikesChanged(long filmId, int delta);
+    }
+
+    /**
+     * Film as it is kept in the index. Likes, year and genres are changed only
+     * while the entry is unlinked from the buckets, because they define its position in the sorted sets.
+     */
+    private static class Entry {
+        private final long filmId;
+        private int likes;
+        private int year;
+        private int[] genres = new int[0];
+
+        private Entry(long filmId) {
+            this.filmId = filmId;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Character trie of scored names for prefix lookup ignoring case.
+ * Every name is inserted from its beginning and from the beginning of every its word,
+ * so "knight" finds "The Dark Knight".
+ * Every node keeps the {@value #TOP_SIZE} best keys of its subtree ordered by score descending, then by name,
+ * so the best matches of a prefix are read from one node. The lists are recomputed from the children
+ * along the paths of a key whenever the key is put, removed or changes its score.
+ * The class is not thread-safe, the owner is responsible for locking.
+ *
+ * @see FilmSearchIndex
+ */
+class PrefixTrie {
+
+    /**
+     * number of best keys kept in every node, a longer list is collected by a walk of the subtree
+     */
+    static final int TOP_SIZE = 20;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    private static final Comparator<Entry> BEST_FIRST = Comparator
+            .comparingInt((Entry e) -> e.score).reversed()
+            .thenComparing(e -> e.name)
+            .thenComparingLong(e -> e.key);
+
+    private final Node root = new Node();
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+
+    /**
+     * Adds the name or replaces the previous name with the same key
+     *
+     * @param key   key of the name
+     * @param name  the name to index
+     * @param score the score of the name, a higher score is suggested first
+     */
+    void put(long key, String name, int score) {
+        remove(key);
+        if (name == null) {
+            return;
+        }
+        Entry entry = new Entry(key, name, score);
+        entries.put(key, entry);
+        for (Node[] path : paths(entry, true)) {
+            path[path.length - 1].keys.add(entry);
+            refresh(path);
+        }
+    }
+
+    /**
+     * Adds the name without updating the best keys of the nodes, used for bulk loading.
+     * {@link #refreshAll()} must be called when all names are loaded
+     *
+     * @param key   key of the name
+     * @param name  the name to index
+     * @param score the score of the name
+     */
+    void load(long key, String name, int score) {
+        if (name == null || entries.containsKey(key)) {
+            return;
+        }
+        Entry entry = new Entry(key, name, score);
+        entries.put(key, entry);
+        for (Node[] path : paths(entry, true)) {
+            path[path.length - 1].keys.add(entry);
+        }
+    }
+
+    /**
+     * Computes the best keys of all nodes after bulk loading
+     */
+    void refreshAll() {
+        refreshSubtree(root);
+    }
+
+    /**
+     * Changes the score of the name, nothing is done for unknown key
+     *
+     * @param key   key of the name
+     * @param score the new score
+     */
+    void setScore(long key, int score) {
+        Entry entry = entries.get(key);
+        if (entry == null || entry.score == score) {
+            return;
+        }
+        entry.score = score;
+        for (Node[] path : paths(entry, false)) {
+            refresh(path);
+        }
+    }
+
+    /**
+     * Removes the name from the trie
+     *
+     * @param key key of the name
+     */
+    void remove(long key) {
+        Entry entry = entries.remove(key);
+        if (entry == null) {
+            return;
+        }
+        for (Node[] path : paths(entry, false)) {
+            path[path.length - 1].keys.remove(entry);
+            for (int i = path.length - 1; i > 0; i--) {
+                Node node = path[i];
+                if (node.keys.isEmpty() && node.children.isEmpty()) {
+                    path[i - 1].children.remove(node.character);
+                }
+            }
+            refresh(path);
+        }
+    }
+
+    /**
+     * Removes all names from the trie
+     */
+    void clear() {
+        root.children.clear();
+        root.keys.clear();
+        root.top = NO_ENTRIES;
+        entries.clear();
+    }
+
+    /**
+     * @param key key of the name
+     * @return the name as it was put, null for unknown key
+     */
+    String name(long key) {
+        Entry entry = entries.get(key);
+        return entry == null ? null : entry.name;
+    }
+
+    /**
+     * @param key key of the name
+     * @return the score of the name, 0 for unknown key
+     */
+    int score(long key) {
+        Entry entry = entries.get(key);
+        return entry == null ? 0 : entry.score;
+    }
+
+    /**
+     * Finds the best names having the prefix at the beginning or at the beginning of one of the words.
+     * Up to {@value #TOP_SIZE} keys are read from the node of the prefix, a longer list is collected
+     * by a walk of its subtree keeping only the best keys in a bounded heap
+     *
+     * @param prefix the typed prefix
+     * @param limit  maximum number of keys
+     * @return keys of matching names ordered by score descending, then by name
+     */
+    List<Long> top(String prefix, int limit) {
+        String normalized = normalize(prefix);
+        Node node = root;
+        for (int i = 0; i < normalized.length() && node != null; i++) {
+            node = node.children.get(normalized.charAt(i));
+        }
+        List<Long> result = new ArrayList<>();
+        if (node == null || limit <= 0) {
+            return result;
+        }
+        if (limit <= TOP_SIZE) {
+            for (int i = 0; i < node.top.length && i < limit; i++) {
+                result.add(node.top[i].key);
+            }
+            return result;
+        }
+        PriorityQueue<Entry> best = new PriorityQueue<>(limit + 1, BEST_FIRST.reversed());
+        Set<Entry> seen = new HashSet<>();
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            for (Entry entry : current.keys) {
+                if (seen.add(entry)) {
+                    best.add(entry);
+                    if (best.size() > limit) {
+                        best.poll();
+                    }
+                }
+            }
+            current.children.values().forEach(stack::push);
+        }
+        Entry[] sorted = best.toArray(NO_ENTRIES);
+        Arrays.sort(sorted, BEST_FIRST);
+        for (Entry entry : sorted) {
+            result.add(entry.key);
+        }
+        return result;
+    }
+
+    /**
+     * Nodes from the root to the end of every word of the name
+     *
+     * @param create true to create missing nodes, else the paths end at the deepest existing node
+     */
+    private List<Node[]> paths(Entry entry, boolean create) {
+        String normalized = normalize(entry.name);
+        List<Node[]> paths = new ArrayList<>();
+        for (int start : wordStarts(normalized)) {
+            Node[] path = new Node[normalized.length() - start + 1];
+            path[0] = root;
+            int size = 1;
+            for (int i = start; i < normalized.length(); i++) {
+                char c = normalized.charAt(i);
+                Node next = path[size - 1].children.get(c);
+                if (next == null) {
+                    if (!create) {
+                        break;
+                    }
+                    next = new Node(c);
+                    path[size - 1].children.put(c, next);
+                }
+                path[size++] = next;
+            }
+            paths.add(size == path.length ? path : Arrays.copyOf(path, size));
+        }
+        return paths;
+    }
+
+    /**
+     * Recomputes the best keys of the nodes of the path from the deepest one up to the root
+     */
+    private static void refresh(Node[] path) {
+        for (int i = path.length - 1; i >= 0; i--) {
+            path[i].top = best(path[i]);
+        }
+    }
+
+    private static void refreshSubtree(Node node) {
+        for (Node child : node.children.values()) {
+            refreshSubtree(child);
+        }
+        node.top = best(node);
+    }
+
+    /**
+     * The best keys among the keys ending in the node and the best keys of its children
+     */
+    private static Entry[] best(Node node) {
+        if (node.children.isEmpty() && node.keys.size() <= 1) {
+            return node.keys.isEmpty() ? NO_ENTRIES : node.keys.toArray(NO_ENTRIES);
+        }
+        Set<Entry> candidates = new HashSet<>(node.keys);
+        for (Node child : node.children.values()) {
+            candidates.addAll(Arrays.asList(child.top));
+        }
+        return candidates.stream().sorted(BEST_FIRST).limit(TOP_SIZE).toArray(Entry[]::new);
+    }
+
+    private static int[] wordStarts(String text) {
+        return IntStream.range(0, text.length())
+                .filter(i -> !Character.isWhitespace(text.charAt(i))
+                        && (i == 0 || Character.isWhitespace(text.charAt(i - 1))))
+                .toArray();
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Indexed name, the score is changed only together with refreshing the nodes of its paths
+     */
+    private static final class Entry {
+        private final long key;
+        private final String name;
+        private int score;
+
+        private Entry(long key, String name, int score) {
+            this.key = key;
+            this.name = name;
+            this.score = score;
+        }
+    }
+
+    private static final class Node {
+        private final char character;
+        private final Map<Character, Node> children = new HashMap<>();
+        private final Set<Entry> keys = new HashSet<>(2);
+        private Entry[] top = NO_ENTRIES;
+
+        private Node() {
+            this('\0');
+        }
+
+        private Node(char character) {
+            this.character = character;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory graph of friendships kept as adjacency lists in sorted primitive arrays:
+ * friends of every user and, for walking edges backwards, users who added every user as a friend.
+ * Intersections are computed by merging sorted arrays, nothing is boxed except the results.
+ * The graph is loaded from FRIENDS on start and then updated by every committed change of friends
+ * received from the outbox.
+ *
+ * The graph receives changes from the outbox before other subscribers, the timelines are built from it.
+ *
+ * @see SortedLongArrays
+ * @see LikesIndex
+ * @see TimelineIndex
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+public class SocialGraph implements OutboxSubscriber {
+
+    /**
+     * rough size in bytes of one adjacency array header with its HashMap node
+     */
+    private static final long LIST_BYTES = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final MeterRegistry meterRegistry;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<Long, long[]> friends = new HashMap<>();
+
+    private final Map<Long, long[]> followers = new HashMap<>();
+
+    /**
+     * Loads the graph from the database and registers the memory footprint gauge
+     */
+    @PostConstruct
+    public void init() {
+        rebuild();
+        Gauge.builder("filmorate.social.graph.memory", this, SocialGraph::estimatedFootprintBytes)
+                .description("Estimated heap size of the friend adjacency arrays")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Drops the graph and loads it again from FRIENDS
+     */
+    public void rebuild() {
+        Map<Long, List<Long>> out = new HashMap<>();
+        Map<Long, List<Long>> in = new HashMap<>();
+        jdbcTemplate.query("SELECT user_id, friend_id FROM friends",
+                rs -> {
+                    long userId = rs.getLong("user_id");
+                    long friendId = rs.getLong("friend_id");
+                    out.computeIfAbsent(userId, id -> new ArrayList<>()).add(friendId);
+                    in.computeIfAbsent(friendId, id -> new ArrayList<>()).add(userId);
+                });
+        lock.writeLock().lock();
+        try {
+            friends.clear();
+            followers.clear();
+            out.forEach((id, ids) -> friends.put(id, toSortedArray(ids)));
+            in.forEach((id, ids) -> followers.put(id, toSortedArray(ids)));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("social graph loaded: {} users with friends", friends.size());
+    }
+
+    /**
+     * @param userId identifier of the user
+     * @return sorted identifiers of friends of the user, the array must not be changed
+     */
+    public long[] friends(Long userId) {
+        lock.readLock().lock();
+        try {
+            return friendsOf(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param userId identifier of the user
+     * @return sorted identifiers of users who have the user as a friend, the array must not be changed
+     */
+    public long[] followers(Long userId) {
+        lock.readLock().lock();
+        try {
+            return followers.getOrDefault(userId, SortedLongArrays.EMPTY);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Friends of both users, found by merging two sorted arrays
+     *
+     * @param userId  identifier of the first user
+     * @param otherId identifier of the second user
+     * @return identifiers of common friends in ascending order
+     */
+    public List<Long> mutualFriends(Long userId, Long otherId) {
+        lock.readLock().lock();
+        try {
+            return toList(SortedLongArrays.intersect(friendsOf(userId), friendsOf(otherId)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Suggests friends of friends who are not friends of the user yet.
+     * A candidate is ranked by the number of the user's friends who have the candidate as a friend,
+     * the lowest identifier wins a tie. Friend lists of all friends are concatenated and sorted,
+     * so every candidate is counted by one pass over a run of equal values
+     *
+     * @param userId identifier of the user
+     * @param limit  maximum number of suggestions
+     * @return identifiers of suggested users mapped to the number of mutual friends, the best first
+     */
+    public Map<Long, Integer> suggestFriends(Long userId, int limit) {
+        long[] candidates;
+        long[] own;
+        lock.readLock().lock();
+        try {
+            own = friendsOf(userId);
+            int size = 0;
+            for (long friendId : own) {
+                size += friendsOf(friendId).length;
+            }
+            candidates = new long[size];
+            int offset = 0;
+            for (long friendId : own) {
+                long[] next = friendsOf(friendId);
+                System.arraycopy(next, 0, candidates, offset, next.length);
+                offset += next.length;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(candidates);
+        List<long[]> ranked = new ArrayList<>();
+        int i = 0;
+        while (i < candidates.length) {
+            long candidate = candidates[i];
+            int j = i;
+            while (j < candidates.length && candidates[j] == candidate) {
+                j++;
+            }
+            if (candidate != userId && !SortedLongArrays.contains(own, candidate)) {
+                ranked.add(new long[]{candidate, j - i});
+            }
+            i = j;
+        }
+        ranked.sort((a, b) -> a[1] != b[1] ? Long.compare(b[1], a[1]) : Long.compare(a[0], b[0]));
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        for (long[] entry : ranked.subList(0, Math.min(limit, ranked.size()))) {
+            result.put(entry[0], (int) entry[1]);
+        }
+        return result;
+    }
+
+    /**
+     * Length of the shortest chain of friendships leading from the user to the other user.
+     * The search runs from both ends at once, friends are followed from the user and
+     * followers from the other user, and the smaller frontier is expanded first
+     *
+     * @param userId   identifier of the user where the chain starts
+     * @param otherId  identifier of the user where the chain ends
+     * @param maxDepth the longest chain to look for
+     * @return number of friendships in the chain, 0 for the same user,
+     * null if there is no chain not longer than maxDepth
+     */
+    public Integer degreeOfSeparation(Long userId, Long otherId, int maxDepth) {
+        if (userId.equals(otherId)) {
+            return 0;
+        }
+        Map<Long, Integer> forwardSeen = new HashMap<>();
+        Map<Long, Integer> backwardSeen = new HashMap<>();
+        forwardSeen.put(userId, 0);
+        backwardSeen.put(otherId, 0);
+        long[] forward = {userId};
+        long[] backward = {otherId};
+        int forwardDepth = 0;
+        int backwardDepth = 0;
+        lock.readLock().lock();
+        try {
+            while (forwardDepth + backwardDepth < maxDepth && forward.length > 0 && backward.length > 0) {
+                boolean expandForward = forward.length <= backward.length;
+                Map<Long, long[]> edges = expandForward ? friends : followers;
+                Map<Long, Integer> seen = expandForward ? forwardSeen : backwardSeen;
+                Map<Long, Integer> other = expandForward ? backwardSeen : forwardSeen;
+                int depth = (expandForward ? forwardDepth : backwardDepth) + 1;
+                long[] frontier = expandForward ? forward : backward;
+                long[] next = new long[16];
+                int size = 0;
+                Integer best = null;
+                for (long id : frontier) {
+                    for (long neighbour : edges.getOrDefault(id, SortedLongArrays.EMPTY)) {
+                        Integer otherDepth = other.get(neighbour);
+                        if (otherDepth != null && (best == null || depth + otherDepth < best)) {
+                            best = depth + otherDepth;
+                        }
+                        if (seen.putIfAbsent(neighbour, depth) == null) {
+                            if (size == next.length) {
+                                next = Arrays.copyOf(next, size * 2);
+                            }
+                            next[size++] = neighbour;
+                        }
+                    }
+                }
+                if (best != null) {
+                    return best;
+                }
+                if (expandForward) {
+                    forward = Arrays.copyOf(next, size);
+                    forwardDepth = depth;
+                } else {
+                    backward = Arrays.copyOf(next, size);
+                    backwardDepth = depth;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies a committed change of friendship
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() != EventType.FRIEND) {
+            return;
+        }
+        if (event.getOperation() == OperationType.ADD) {
+            onFriendAdded(event.getUserId(), event.getEntityId());
+        } else {
+            onFriendRemoved(event.getUserId(), event.getEntityId());
+        }
+    }
+
+    /**
+     * Adds the friendship edge
+     *
+     * @param userId   identifier of the user
+     * @param friendId identifier of the added friend
+     */
+    public void onFriendAdded(Long userId, Long friendId) {
+        lock.writeLock().lock();
+        try {
+            friends.put(userId, SortedLongArrays.insert(friendsOf(userId), friendId));
+            followers.put(friendId, SortedLongArrays.insert(followers.getOrDefault(friendId, SortedLongArrays.EMPTY),
+                    userId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the friendship edge
+     *
+     * @param userId   identifier of the user
+     * @param friendId identifier of the removed friend
+     */
+    public void onFriendRemoved(Long userId, Long friendId) {
+        lock.writeLock().lock();
+        try {
+            removeFrom(friends, userId, friendId);
+            removeFrom(followers, friendId, userId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all friendships of the deleted user in both directions
+     *
+     * @param userId identifier of removed user
+     */
+    public void onUserDeleted(Long userId) {
+        lock.writeLock().lock();
+        try {
+            long[] out = friends.remove(userId);
+            if (out != null) {
+                for (long friendId : out) {
+                    removeFrom(followers, friendId, userId);
+                }
+            }
+            long[] in = followers.remove(userId);
+            if (in != null) {
+                for (long followerId : in) {
+                    removeFrom(friends, followerId, userId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return estimated number of bytes taken by the adjacency arrays in the heap
+     */
+    public long estimatedFootprintBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (friends.size() + followers.size()) * LIST_BYTES;
+            for (long[] ids : friends.values()) {
+                bytes += (long) ids.length * Long.BYTES;
+            }
+            for (long[] ids : followers.values()) {
+                bytes += (long) ids.length * Long.BYTES;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long[] friendsOf(long userId) {
+        return friends.getOrDefault(userId, SortedLongArrays.EMPTY);
+    }
+
+    private static void removeFrom(Map<Long, long[]> map, long key, long value) {
+        long[] values = map.get(key);
+        if (values == null) {
+            return;
+        }
+        long[] removed = SortedLongArrays.remove(values, value);
+        if (removed.length == 0) {
+            map.remove(key);
+        } else {
+            map.put(key, removed);
+        }
+    }
+
+    private static long[] toSortedArray(List<Long> ids) {
+        long[] array = ids.stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(array);
+        return array;
+    }
+
+    private static List<Long> toList(long[] array) {
+        List<Long> ids = new ArrayList<>(array.length);
+        for (long id : array) {
+            ids.add(id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.Arrays;
+
+/**
+ * Operations on sorted arrays of distinct identifiers.
+ * Arrays are never changed in place, a changed copy is returned,
+ * so an array once published can be read without a lock.
+ *
+ * @see SocialGraph
+ */
+public final class SortedLongArrays {
+
+    /**
+     * the shared empty array
+     */
+    public static final long[] EMPTY = new long[0];
+
+    private SortedLongArrays() {
+    }
+
+    /**
+     * @param array sorted array
+     * @param value the value to find
+     * @return true if the array contains the value
+     */
+    public static boolean contains(long[] array, long value) {
+        return Arrays.binarySearch(array, value) >= 0;
+    }
+
+    /**
+     * @param array sorted array
+     * @param value the value to insert
+     * @return sorted copy of the array with the value, the same array if the value is already present
+     */
+    public static long[] insert(long[] array, long value) {
+        int index = Arrays.binarySearch(array, value);
+        if (index >= 0) {
+            return array;
+        }
+        int insertion = -index - 1;
+        long[] result = new long[array.length + 1];
+        System.arraycopy(array, 0, result, 0, insertion);
+        result[insertion] = value;
+        System.arraycopy(array, insertion, result, insertion + 1, array.length - insertion);
+        return result;
+    }
+
+    /**
+     * @param array sorted array
+     * @param value the value to remove
+     * @return sorted copy of the array without the value, the same array if the value is absent
+     */
+    public static long[] remove(long[] array, long value) {
+        int index = Arrays.binarySearch(array, value);
+        if (index < 0) {
+            return array;
+        }
+        if (array.length == 1) {
+            return EMPTY;
+        }
+        long[] result = new long[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, array.length - index - 1);
+        return result;
+    }
+
+    /**
+     * Intersection of two sorted arrays by a single merge pass
+     *
+     * @param first  sorted array
+     * @param second sorted array
+     * @return sorted array of values present in both arrays
+     */
+    public static long[] intersect(long[] first, long[] second) {
+        long[] result = new long[Math.min(first.length, second.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+}
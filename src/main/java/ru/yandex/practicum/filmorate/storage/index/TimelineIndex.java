@@ -0,0 +1,261 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxSubscriber;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Precomputed timelines of what friends of the user did.
+ * A timeline is a sorted array of identifiers of the last feed events made by friends of the user,
+ * bounded by {@code filmorate.timeline.size}. Timelines are kept for recently read users only,
+ * in a Caffeine cache bounded by {@code filmorate.timeline.maximum-size}.
+ * A timeline is built on the first read from the recent events of every friend,
+ * then every written event is pushed to the cached timelines of the followers of its author.
+ * Events are pushed by the "timeline-fanout" thread in the order they are written,
+ * so the writer of the feed does not wait for fan-out and a timeline shows a new event a moment later.
+ * Events of authors with more followers than {@code filmorate.timeline.fanout-limit} are not pushed,
+ * they are pulled from the feed when a follower reads the timeline.
+ * A page older than the oldest event kept in the timeline is pulled from the feed as well.
+ * Events are pulled for all such friends by one query, which reads the latest events before the bound
+ * across the friends, as many as the page needs.
+ * A timeline is dropped when the user adds or removes a friend and is built again on the next read.
+ * The cost of fan-out is measured by the {@code filmorate.timeline.fanout} timer and
+ * the {@code filmorate.timeline.fanout.timelines} distribution of the number of updated timelines.
+ *
+ * @see SocialGraph
+ * @see Feed
+ */
+@Slf4j
+@Component
+public class TimelineIndex implements OutboxSubscriber {
+
+    /**
+     * identifiers of the latest events of the users by the array of identifiers before the identifier
+     */
+    public static final String FIND_EVENT_IDS = "SELECT event_id FROM feed WHERE user_id = ANY(?) AND event_id < ? "
+            + "ORDER BY event_id DESC LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final SocialGraph socialGraph;
+
+    private final Cache<Long, long[]> timelines;
+
+    private final int size;
+
+    private final int fanoutLimit;
+
+    private final Timer fanoutTimer;
+
+    private final DistributionSummary fanoutTimelines;
+
+    private final Timer pullTimer;
+
+    private final ExecutorService fanout = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "timeline-fanout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public TimelineIndex(JdbcTemplate jdbcTemplate,
+                         SocialGraph socialGraph,
+                         MeterRegistry meterRegistry,
+                         @Value("${filmorate.timeline.size:200}") int size,
+                         @Value("${filmorate.timeline.fanout-limit:1000}") int fanoutLimit,
+                         @Value("${filmorate.timeline.maximum-size:100000}") long maximumSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.socialGraph = socialGraph;
+        this.size = size;
+        this.fanoutLimit = fanoutLimit;
+        this.timelines = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, timelines, "timelines");
+        this.fanoutTimer = Timer.builder("filmorate.timeline.fanout")
+                .description("Time of pushing one feed event to the timelines of followers")
+                .register(meterRegistry);
+        this.fanoutTimelines = DistributionSummary.builder("filmorate.timeline.fanout.timelines")
+                .description("Number of timelines updated by one feed event")
+                .register(meterRegistry);
+        this.pullTimer = Timer.builder("filmorate.timeline.pull")
+                .description("Time of reading recent events of friends from the feed")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Returns one page of the timeline of the user, the newest events first.
+     * A full timeline holds only the newest events of friends, so if the page is not filled by them,
+     * events older than the oldest kept one are pulled from the feed of all friends
+     *
+     * @param userId        identifier of the user
+     * @param beforeEventId the page contains events with less identifiers, null for the newest events
+     * @param limit         maximum number of events in the page
+     * @return identifiers of feed events in descending order
+     */
+    public List<Long> eventIds(Long userId, Long beforeEventId, int limit) {
+        long before = beforeEventId == null ? Long.MAX_VALUE : beforeEventId;
+        long[] pushed = timelines.get(userId, this::build);
+        int cachedBefore = countBefore(pushed, before);
+        boolean pullOlder = pushed.length >= size && cachedBefore < limit;
+        long olderBefore = pullOlder ? Math.min(before, pushed[0]) : before;
+        List<Long> highFanout = new ArrayList<>();
+        List<Long> others = new ArrayList<>();
+        for (long friendId : socialGraph.friends(userId)) {
+            (isHighFanout(friendId) ? highFanout : others).add(friendId);
+        }
+        List<long[]> parts = new ArrayList<>();
+        parts.add(pushed);
+        parts.add(pull(highFanout, before, limit));
+        if (pullOlder) {
+            parts.add(pull(others, olderBefore, limit - cachedBefore));
+        }
+        long[] merged = merge(parts);
+        List<Long> page = new ArrayList<>(limit);
+        for (int i = merged.length - 1; i >= 0 && page.size() < limit; i--) {
+            if (merged[i] < before) {
+                page.add(merged[i]);
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Queues the written event to be pushed to the cached timelines of the followers of its author
+     *
+     * @param feed the written event
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onFeedAdded(Feed feed) {
+        try {
+            fanout.execute(() -> fanOut(feed));
+        } catch (RejectedExecutionException e) {
+            log.debug("timeline fan-out is stopped, event {} is not pushed", feed.getEventId());
+        }
+    }
+
+    /**
+     * Pushes the written event to the cached timelines of the followers of its author on the calling thread
+     *
+     * @param feed the written event
+     */
+    public void fanOut(Feed feed) {
+        long[] followers = socialGraph.followers(feed.getUserId());
+        if (followers.length == 0 || followers.length > fanoutLimit) {
+            return;
+        }
+        long eventId = feed.getEventId();
+        fanoutTimer.record(() -> {
+            int updated = 0;
+            for (long followerId : followers) {
+                if (timelines.asMap().computeIfPresent(followerId, (id, timeline) -> append(timeline, eventId))
+                        != null) {
+                    updated++;
+                }
+            }
+            fanoutTimelines.record(updated);
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        fanout.shutdownNow();
+    }
+
+    /**
+     * Drops the timeline of the user who added or removed a friend
+     *
+     * @param event the committed change
+     */
+    @Override
+    public void onEvent(OutboxEvent event) {
+        if (event.getEventType() == EventType.FRIEND) {
+            timelines.invalidate(event.getUserId());
+        }
+    }
+
+    /**
+     * Drops the timelines of the deleted user and of its followers,
+     * events of the user are removed from the feed by the database cascade.
+     * Must be called before the user is removed from the social graph
+     *
+     * @param userId identifier of removed user
+     */
+    public void onUserDeleted(Long userId) {
+        timelines.invalidate(userId);
+        for (long followerId : socialGraph.followers(userId)) {
+            timelines.invalidate(followerId);
+        }
+    }
+
+    private boolean isHighFanout(long userId) {
+        return socialGraph.followers(userId).length > fanoutLimit;
+    }
+
+    private long[] build(Long userId) {
+        List<Long> friends = new ArrayList<>();
+        for (long friendId : socialGraph.friends(userId)) {
+            if (!isHighFanout(friendId)) {
+                friends.add(friendId);
+            }
+        }
+        long[] pulled = pull(friends, Long.MAX_VALUE, size);
+        Arrays.sort(pulled);
+        log.debug("timeline of user {} built from {} events", userId, pulled.length);
+        return pulled;
+    }
+
+    /**
+     * @return identifiers of the latest events of the users before the bound, read by one query
+     */
+    private long[] pull(List<Long> userIds, long before, int limit) {
+        if (userIds.isEmpty() || limit <= 0) {
+            return new long[0];
+        }
+        return pullTimer.record(() -> jdbcTemplate.query(FIND_EVENT_IDS,
+                ps -> {
+                    ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", userIds.toArray()));
+                    ps.setLong(2, before);
+                    ps.setInt(3, limit);
+                },
+                (rs, rowNum) -> rs.getLong("event_id"))
+                .stream().mapToLong(Long::longValue).toArray());
+    }
+
+    /**
+     * @return number of identifiers in the sorted array less than the bound
+     */
+    private static int countBefore(long[] ids, long before) {
+        int index = Arrays.binarySearch(ids, before);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private long[] append(long[] timeline, long eventId) {
+        long[] result = SortedLongArrays.insert(timeline, eventId);
+        return result.length > size ? Arrays.copyOfRange(result, result.length - size, result.length) : result;
+    }
+
+    private static long[] merge(List<long[]> parts) {
+        return parts.stream().flatMapToLong(Arrays::stream).sorted().distinct().toArray();
+    }
+}
@@ -0,0 +1,124 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Inverted index from three-character substrings of texts to identifiers of the texts.
+ * Answers case-insensitive substring queries: candidates are found by intersection of the posting lists
+ * of the query trigrams and then checked against the text itself.
+ * Queries shorter than three characters are checked against every text.
+ * The class is not thread-safe, the owner is responsible for locking.
+ *
+ * @see FilmSearchIndex
+ */
+class TrigramIndex {
+
+    private final Map<Long, String> texts = new HashMap<>();
+
+    private final Map<Long, Set<Long>> postings = new HashMap<>();
+
+    /**
+     * Adds the text or replaces the previous text with the same identifier
+     *
+     * @param id   identifier of the text
+     * @param text the text to index
+     */
+    void put(long id, String text) {
+        remove(id);
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (long trigram : trigrams(normalized)) {
+            postings.computeIfAbsent(trigram, t -> new HashSet<>()).add(id);
+        }
+    }
+
+    /**
+     * Removes the text from the index
+     *
+     * @param id identifier of the text
+     */
+    void remove(long id) {
+        String previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (long trigram : trigrams(previous)) {
+            Set<Long> ids = postings.get(trigram);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(trigram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes all texts from the index
+     */
+    void clear() {
+        texts.clear();
+        postings.clear();
+    }
+
+    /**
+     * Finds texts containing the query ignoring case
+     *
+     * @param query the substring to search
+     * @return Set of identifiers of matching texts
+     */
+    Set<Long> search(String query) {
+        String normalized = normalize(query);
+        Set<Long> result = new HashSet<>();
+        Set<Long> trigrams = trigrams(normalized);
+        if (trigrams.isEmpty()) {
+            texts.forEach((id, text) -> {
+                if (text.contains(normalized)) {
+                    result.add(id);
+                }
+            });
+            return result;
+        }
+        List<Set<Long>> lists = new ArrayList<>(trigrams.size());
+        for (long trigram : trigrams) {
+            Set<Long> ids = postings.get(trigram);
+            if (ids == null) {
+                return result;
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+        Set<Long> smallest = lists.get(0);
+        candidates:
+        for (Long id : smallest) {
+            for (int i = 1; i < lists.size(); i++) {
+                if (!lists.get(i).contains(id)) {
+                    continue candidates;
+                }
+            }
+            if (texts.get(id).contains(normalized)) {
+                result.add(id);
+            }
+        }
+        return result;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<Long> trigrams(String text) {
+        Set<Long> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            trigrams.add(((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2));
+        }
+        return trigrams;
+    }
+}
@@ -0,0 +1,416 @@
+package ru.yandex.practicum.filmorate.storage.outbox;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Transactional outbox of changes made by users.
+ * A change is recorded in the OUTBOX table by the transaction which makes it, so both are committed or none.
+ * After commit the relay reads the new events from the outbox in order of identifiers and passes them
+ * to every subscriber. The relay runs under one lock, so subscribers receive events of all transactions
+ * one by one in a single order. A committed transaction does not wait for the lock while it still holds
+ * its connection, it requests the relay and the thread holding the lock runs it once more.
+ * Every subscriber receives a whole page of events at once. In-memory subscribers apply it before the relay returns,
+ * so the request which made the change reads it, a subscriber which writes to the database may only queue the page.
+ * Waiting for such writes and the bookkeeping of the outbox run on the single relay thread in order of pages,
+ * so the committed request does not wait for them and the next page is dispatched meanwhile.
+ * Events are not read again while their page is in flight.
+ * A dispatched event is removed from the outbox in a new transaction. If a subscriber which keeps the result
+ * in the database fails, the event is kept in the outbox with the number of attempts,
+ * it is passed to such subscribers again every {@code filmorate.outbox.retry-delay-millis}
+ * and dropped with an error after {@code filmorate.outbox.max-attempts}.
+ * A failure of an in-memory subscriber is logged only, its state is loaded from the database on start.
+ * Events left in the outbox by a crash between commit and removal are passed on start
+ * to the subscribers which keep the result in the database, so such events are delivered at least once.
+ *
+ * @see OutboxSubscriber
+ * @see OutboxEvent
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    /**
+     * removal of dispatched events by the array of identifiers
+     */
+    public static final String DELETE_BY_IDS = "DELETE FROM outbox WHERE event_id = ANY(?)";
+
+    /**
+     * page of committed events not dispatched yet in order of identifiers
+     */
+    public static final String FIND_NEW = "SELECT * FROM outbox WHERE attempts = 0 AND event_id > ? "
+            + "ORDER BY event_id LIMIT ?";
+
+    /**
+     * page of events failed by a subscriber in order of identifiers
+     */
+    public static final String FIND_FAILED_AFTER = "SELECT * FROM outbox WHERE attempts > 0 AND event_id > ? "
+            + "ORDER BY event_id LIMIT ?";
+
+    /**
+     * page of all events in order of identifiers
+     */
+    public static final String FIND_AFTER = "SELECT * FROM outbox WHERE event_id > ? ORDER BY event_id LIMIT ?";
+
+    /**
+     * one more failed attempt of events by the array of identifiers
+     */
+    public static final String INCREMENT_ATTEMPTS = "UPDATE outbox SET attempts = attempts + 1 WHERE event_id = ANY(?)";
+
+    /**
+     * number of events read from the outbox at once
+     */
+    private static final int PAGE_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate newTransaction;
+
+    private final List<OutboxSubscriber> subscribers;
+
+    private final int maxAttempts;
+
+    private final Lock relayLock = new ReentrantLock();
+
+    private final AtomicBoolean relayRequested = new AtomicBoolean();
+
+    /**
+     * identifiers of dispatched events until they are removed from the outbox or their attempt is counted
+     */
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService completer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "outbox-relay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OutboxRelay(JdbcTemplate jdbcTemplate,
+                       PlatformTransactionManager transactionManager,
+                       List<OutboxSubscriber> subscribers,
+                       @Value("${filmorate.outbox.max-attempts:5}") int maxAttempts) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.subscribers = subscribers;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Records the change in the current transaction, subscribers receive it after commit.
+     * Without a transaction the relay runs at once
+     *
+     * @param eventType the kind of changed data
+     * @param operation the change made
+     * @param userId    the identifier of user who made the change
+     * @param entityId  the identifier of the changed entity
+     * @return the recorded event with identifier
+     * @see OutboxEvent
+     */
+    public OutboxEvent append(EventType eventType, OperationType operation, Long userId, Long entityId) {
+        OutboxEvent event = OutboxEvent.builder()
+                .timestamp(System.currentTimeMillis())
+                .eventType(eventType)
+                .operation(operation)
+                .userId(userId)
+                .entityId(entityId)
+                .build();
+        final String sql = "INSERT INTO outbox (event_time, event_type, operation, user_id, entity_id) "
+                + "VALUES ( ?, ?, ?, ?, ? )";
+        KeyHolder keyHolder = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement stmt = connection.prepareStatement(sql, new String[]{"event_id"});
+            stmt.setTimestamp(1, new Timestamp(event.getTimestamp()));
+            stmt.setString(2, event.getEventType().toString());
+            stmt.setString(3, event.getOperation().toString());
+            stmt.setLong(4, event.getUserId());
+            stmt.setLong(5, event.getEntityId());
+            return stmt;
+        }, keyHolder);
+        event.setEventId(keyHolder.getKey().longValue());
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            relayAfterCommit();
+        } else {
+            relay();
+        }
+        return event;
+    }
+
+    /**
+     * Passes the committed events not dispatched yet to all subscribers in order of identifiers.
+     * If the relay is running in another thread, that thread passes the events.
+     * Returns once in-memory subscribers have applied the events, without waiting for the database writes
+     */
+    public void relay() {
+        relayRequested.set(true);
+        while (relayRequested.get() && relayLock.tryLock()) {
+            try {
+                if (relayRequested.compareAndSet(true, false)) {
+                    long after = 0;
+                    List<OutboxEvent> events;
+                    do {
+                        long from = after;
+                        Set<Long> inFlightBefore = Set.copyOf(inFlight);
+                        events = newTransaction.execute(status ->
+                                jdbcTemplate.query(FIND_NEW, this::mapRowToEvent, from, PAGE_SIZE));
+                        dispatch(events, inFlightBefore, false);
+                        if (!events.isEmpty()) {
+                            after = events.get(events.size() - 1).getEventId();
+                        }
+                    } while (events.size() == PAGE_SIZE);
+                }
+            } finally {
+                relayLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Waits until the pages dispatched before are written by all subscribers and the outbox is updated
+     */
+    public void awaitDispatched() {
+        complete(() -> {
+        }).join();
+    }
+
+    /**
+     * Lets the relay thread finish the dispatched pages on shutdown
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        completer.shutdown();
+        if (!completer.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("outbox relay is stopped with pages in flight, their events are replayed on start");
+        }
+    }
+
+    /**
+     * Passes the events left in the outbox to the subscribers which keep the result in the database
+     *
+     * @return the number of passed events
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public int replayPending() {
+        int replayed = redeliver(FIND_AFTER);
+        if (replayed > 0) {
+            log.warn("{} events left in the outbox are replayed", replayed);
+        }
+        return replayed;
+    }
+
+    /**
+     * Passes the events failed before to the subscribers which keep the result in the database.
+     * Runs periodically with the delay of {@code filmorate.outbox.retry-delay-millis}
+     *
+     * @return the number of passed events
+     */
+    @Scheduled(fixedDelayString = "${filmorate.outbox.retry-delay-millis:60000}",
+            initialDelayString = "${filmorate.outbox.retry-delay-millis:60000}")
+    public int retryFailed() {
+        int retried = redeliver(FIND_FAILED_AFTER);
+        if (retried > 0) {
+            log.info("{} failed outbox events are retried", retried);
+        }
+        return retried;
+    }
+
+    /**
+     * The first call in a transaction registers the relay after commit
+     */
+    private void relayAfterCommit() {
+        if (TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                relay();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(OutboxRelay.this);
+            }
+        });
+    }
+
+    /**
+     * Reads the events by pages of the query and passes them to the subscribers
+     * which keep the result in the database
+     */
+    private int redeliver(String sql) {
+        relayLock.lock();
+        try {
+            int redelivered = 0;
+            long after = 0;
+            List<OutboxEvent> events;
+            do {
+                long from = after;
+                Set<Long> inFlightBefore = Set.copyOf(inFlight);
+                events = newTransaction.execute(status -> jdbcTemplate.query(sql, this::mapRowToEvent,
+                        from, PAGE_SIZE));
+                redelivered += dispatch(events, inFlightBefore, true).join();
+                if (!events.isEmpty()) {
+                    after = events.get(events.size() - 1).getEventId();
+                }
+            } while (events.size() == PAGE_SIZE);
+            return redelivered;
+        } finally {
+            relayLock.unlock();
+            if (relayRequested.get()) {
+                relay();
+            }
+        }
+    }
+
+    /**
+     * Passes the page of events to the subscribers, skipping the events of pages still in flight.
+     * They are taken before the page is read: a page completed after that is seen in the outbox as it was before,
+     * but its events are skipped, and a page completed before that is seen removed or with one more attempt.
+     * The results are awaited on the relay thread, see {@link #completePage}
+     *
+     * @param inFlightBefore the identifiers of events in flight before the page was read
+     * @param durableOnly    true to pass the events only to the subscribers which keep the result in the database
+     * @return the future of the number of passed events, completed when the outbox is updated
+     */
+    private CompletableFuture<Integer> dispatch(List<OutboxEvent> page, Set<Long> inFlightBefore,
+                                                boolean durableOnly) {
+        List<OutboxEvent> events = new ArrayList<>(page.size());
+        for (OutboxEvent event : page) {
+            if (!inFlightBefore.contains(event.getEventId())) {
+                inFlight.add(event.getEventId());
+                events.add(event);
+            }
+        }
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(0);
+        }
+        Map<OutboxSubscriber, List<CompletableFuture<?>>> results = new LinkedHashMap<>();
+        for (OutboxSubscriber subscriber : subscribers) {
+            if (durableOnly && !subscriber.replayOnStart()) {
+                continue;
+            }
+            List<CompletableFuture<?>> applied;
+            try {
+                applied = subscriber.onEvents(events);
+            } catch (RuntimeException e) {
+                applied = new ArrayList<>(events.size());
+                for (int i = 0; i < events.size(); i++) {
+                    applied.add(CompletableFuture.failedFuture(e));
+                }
+            }
+            results.put(subscriber, applied);
+        }
+        return complete(() -> completePage(events, results)).thenApply(completed -> events.size());
+    }
+
+    /**
+     * Waits for the results of the page. Events applied by all subscribers which keep the result in the database
+     * are removed from the outbox, the others are kept with one more attempt until the maximum is reached.
+     * A failure of one subscriber is logged and does not stop the others
+     */
+    private void completePage(List<OutboxEvent> events, Map<OutboxSubscriber, List<CompletableFuture<?>>> results) {
+        try {
+            List<Long> done = new ArrayList<>(events.size());
+            List<Long> failed = new ArrayList<>();
+            for (int i = 0; i < events.size(); i++) {
+                OutboxEvent event = events.get(i);
+                boolean applied = true;
+                for (Map.Entry<OutboxSubscriber, List<CompletableFuture<?>>> result : results.entrySet()) {
+                    OutboxSubscriber subscriber = result.getKey();
+                    try {
+                        result.getValue().get(i).join();
+                    } catch (CompletionException e) {
+                        log.error("outbox event {} is not applied by {}", event, subscriber.getClass().getSimpleName(),
+                                e.getCause());
+                        applied = applied && !subscriber.replayOnStart();
+                    }
+                }
+                if (applied) {
+                    done.add(event.getEventId());
+                } else if (event.getAttempts() + 1 >= maxAttempts) {
+                    log.error("outbox event {} is dropped after {} attempts", event, maxAttempts);
+                    done.add(event.getEventId());
+                } else {
+                    failed.add(event.getEventId());
+                }
+            }
+            newTransaction.executeWithoutResult(status -> {
+                update(DELETE_BY_IDS, done);
+                update(INCREMENT_ATTEMPTS, failed);
+            });
+        } catch (RuntimeException e) {
+            log.error("outbox is not updated after dispatch of {} events, they are dispatched again", events.size(), e);
+            throw e;
+        } finally {
+            events.forEach(event -> inFlight.remove(event.getEventId()));
+        }
+    }
+
+    /**
+     * Runs the task on the relay thread after the pages dispatched before, on the calling thread after shutdown
+     */
+    private CompletableFuture<Void> complete(Runnable task) {
+        try {
+            return CompletableFuture.runAsync(task, completer);
+        } catch (RejectedExecutionException e) {
+            task.run();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    private void update(String sql, List<Long> ids) {
+        if (!ids.isEmpty()) {
+            jdbcTemplate.update(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("BIGINT", ids.toArray())));
+        }
+    }
+
+    private OutboxEvent mapRowToEvent(ResultSet rs, int rowNum) throws SQLException {
+        return OutboxEvent.builder()
+                .eventId(rs.getLong("event_id"))
+                .timestamp(rs.getTimestamp("event_time").getTime())
+                .eventType(EventType.valueOf(rs.getString("event_type")))
+                .operation(OperationType.valueOf(rs.getString("operation")))
+                .userId(rs.getLong("user_id"))
+                .entityId(rs.getLong("entity_id"))
+                .attempts(rs.getInt("attempts"))
+                .build();
+    }
+}
@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.storage.outbox;
+
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Receiver of committed changes from the outbox.
+ * Events are received one by one in the order they were recorded, once their transaction is committed.
+ *
+ * @see OutboxRelay
+ */
+public interface OutboxSubscriber {
+
+    /**
+     * Applies the committed change
+     *
+     * @param event the change recorded in the outbox
+     */
+    void onEvent(OutboxEvent event);
+
+    /**
+     * Applies the committed changes of one page read from the outbox in order.
+     * By default they are applied one by one on the calling thread. A subscriber which writes them to the database
+     * may only start writing all of them and complete the futures later, the relay waits for such futures
+     * on its own thread, so the request which committed the changes does not wait for the writes
+     *
+     * @param events the changes recorded in the outbox in order of identifiers
+     * @return the futures of the events in the same order, completed exceptionally for the events not applied
+     */
+    default List<CompletableFuture<?>> onEvents(List<OutboxEvent> events) {
+        List<CompletableFuture<?>> applied = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            try {
+                onEvent(event);
+                applied.add(CompletableFuture.completedFuture(null));
+            } catch (RuntimeException e) {
+                applied.add(CompletableFuture.failedFuture(e));
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * In-memory subscribers are loaded from the database on start and must not see the events again,
+     * subscribers which keep the result in the database get the events left undispatched by a crash
+     * and the events they failed to apply
+     *
+     * @return true if the subscriber should receive events left in the outbox on start and retries of failed events
+     */
+    default boolean replayOnStart() {
+        return false;
+    }
+}
@@ -0,0 +1,16 @@
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INT DEFAULT 0 NOT NULL;
+
+UPDATE films F
+SET likes_count = (SELECT COUNT(*) FROM film_likes FL WHERE FL.film_id = F.film_id);
+
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+
+CREATE INDEX IF NOT EXISTS film_likes_user_idx ON film_likes (user_id, film_id);
+
+CREATE INDEX IF NOT EXISTS film_directors_director_idx ON film_directors (director_id, film_id);
+
+CREATE INDEX IF NOT EXISTS friends_friend_idx ON friends (friend_id, user_id);
+
+CREATE INDEX IF NOT EXISTS reviews_film_idx ON reviews (film_id, user_id);
+
+CREATE INDEX IF NOT EXISTS review_like_user_idx ON review_like (user_id, review_id);
@@ -1,6 +1,3 @@
-DROP TABLE IF EXISTS feed, review_like, reviews, friends, film_directors, film_likes, film_genre, genres,
-    films, directors, rating_mpa, users;
-
 CREATE TABLE IF NOT EXISTS users
 (
     user_id   BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -0,0 +1,10 @@
+ALTER TABLE reviews ADD COLUMN IF NOT EXISTS useful INTEGER DEFAULT 0 NOT NULL;
+
+UPDATE reviews R
+SET useful = (SELECT COALESCE(SUM(CASE WHEN RL.is_useful THEN 1 ELSE -1 END), 0)
+              FROM review_like RL
+              WHERE RL.review_id = R.review_id);
+
+CREATE INDEX IF NOT EXISTS reviews_film_useful_idx ON reviews (film_id, useful DESC, review_id);
+
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC, review_id);
@@ -0,0 +1,3 @@
+CREATE INDEX IF NOT EXISTS feed_user_event_idx ON feed (user_id, event_id);
+
+DROP INDEX IF EXISTS feed_user_time_idx;
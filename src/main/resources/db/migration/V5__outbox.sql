@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS outbox
+(
+    event_id   BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    event_time TIMESTAMP   NOT NULL,
+    event_type VARCHAR(10) NOT NULL,
+    operation  VARCHAR(10) NOT NULL,
+    user_id    BIGINT      NOT NULL,
+    entity_id  BIGINT      NOT NULL
+);
@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS review_like_reaction_idx ON review_like (review_id, user_id, is_useful);
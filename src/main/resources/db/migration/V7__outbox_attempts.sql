@@ -0,0 +1,3 @@
+ALTER TABLE outbox ADD COLUMN IF NOT EXISTS attempts INTEGER DEFAULT 0 NOT NULL;
+
+CREATE INDEX IF NOT EXISTS outbox_attempts_idx ON outbox (attempts, event_id);
@@ -0,0 +1,185 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+import ru.yandex.practicum.filmorate.storage.cache.UserCache;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.index.LikesIndex;
+import ru.yandex.practicum.filmorate.storage.index.PopularityIndex;
+import ru.yandex.practicum.filmorate.storage.index.SocialGraph;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Application context and data set shared by the benchmarks.
+ * Every context gets its own in-memory database, the data set is generated from a fixed seed,
+ * so runs are repeatable. Rows are written by JDBC batches and the in-memory indexes are rebuilt afterwards.
+ */
+final class BenchmarkData {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private static final String[] WORDS = {
+            "dark", "star", "night", "city", "love", "war", "river", "ghost", "king", "queen",
+            "road", "summer", "winter", "blood", "dream", "storm", "silent", "last", "lost", "golden",
+            "iron", "secret", "shadow", "empire", "ocean", "fire", "moon", "sun", "wild", "broken"
+    };
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * Starts the application without the web server on a new in-memory database.
+     * Properties are passed as command line arguments, so they override application.properties
+     *
+     * @param properties additional properties as key=value
+     * @return the started context
+     */
+    static ConfigurableApplicationContext start(String... properties) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:benchmark" + System.nanoTime(),
+                "--logging.level.root=warn",
+                "--logging.level.ru.yandex.practicum=warn",
+                "--filmorate.feed.writer.mode=SYNC"));
+        for (String property : properties) {
+            args.add("--" + property);
+        }
+        return new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .run(args.toArray(new String[0]));
+    }
+
+    /**
+     * Inserts users with identifiers from 1 to count
+     */
+    static void users(JdbcTemplate jdbcTemplate, int count) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            rows.add(new Object[]{"user" + i, "login" + i, "user" + i + "@mail.ru", Date.valueOf("1990-01-01")});
+            flush(jdbcTemplate, "INSERT INTO users (user_name, login, email, birthday) VALUES (?, ?, ?, ?)", rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO users (user_name, login, email, birthday) VALUES (?, ?, ?, ?)", rows);
+    }
+
+    /**
+     * Inserts films with identifiers from 1 to count, every film has a title of two random words and its number,
+     * one or two genres and one of the directors
+     */
+    static void films(JdbcTemplate jdbcTemplate, int count, int directors, Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i <= directors; i++) {
+            rows.add(new Object[]{word(random) + " " + word(random) + " " + i});
+        }
+        flushAll(jdbcTemplate, "INSERT INTO directors (director_name) VALUES (?)", rows);
+        LocalDate firstRelease = LocalDate.of(1950, 1, 1);
+        for (int i = 1; i <= count; i++) {
+            rows.add(new Object[]{word(random) + " " + word(random) + " " + i, "description",
+                    Date.valueOf(firstRelease.plusDays(random.nextInt(365 * 70))), 90 + random.nextInt(90),
+                    1 + random.nextInt(5)});
+            flush(jdbcTemplate, "INSERT INTO films (film_name, description, release_date, duration, rating_mpa_id) "
+                    + "VALUES (?, ?, ?, ?, ?)", rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO films (film_name, description, release_date, duration, rating_mpa_id) "
+                + "VALUES (?, ?, ?, ?, ?)", rows);
+        for (int i = 1; i <= count; i++) {
+            int genre = 1 + random.nextInt(6);
+            rows.add(new Object[]{i, genre});
+            if (random.nextBoolean()) {
+                rows.add(new Object[]{i, 1 + genre % 6});
+            }
+            flush(jdbcTemplate, "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO film_genre (film_id, genre_id) VALUES (?, ?)", rows);
+        if (directors > 0) {
+            for (int i = 1; i <= count; i++) {
+                rows.add(new Object[]{i, 1 + random.nextInt(directors)});
+                flush(jdbcTemplate, "INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", rows);
+            }
+            flushAll(jdbcTemplate, "INSERT INTO film_directors (film_id, director_id) VALUES (?, ?)", rows);
+        }
+    }
+
+    /**
+     * Every user likes the given number of films, popular films are liked more often,
+     * then the likes counters of films are set
+     */
+    static void likes(JdbcTemplate jdbcTemplate, int users, int films, int likesPerUser, Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            long[] liked = random.longs(0, films).map(x -> 1 + (long) (Math.pow((double) x / films, 3) * films))
+                    .distinct().limit(likesPerUser).toArray();
+            for (long film : liked) {
+                rows.add(new Object[]{film, user});
+            }
+            flush(jdbcTemplate, "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", rows);
+        jdbcTemplate.update("UPDATE films F SET likes_count = "
+                + "(SELECT COUNT(*) FROM film_likes FL WHERE FL.film_id = F.film_id)");
+    }
+
+    /**
+     * Every user adds the given number of random friends
+     */
+    static void friends(JdbcTemplate jdbcTemplate, int users, int friendsPerUser, Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            int current = user;
+            random.ints(1, users + 1).filter(friend -> friend != current).distinct().limit(friendsPerUser)
+                    .forEach(friend -> rows.add(new Object[]{current, friend}));
+            flush(jdbcTemplate, "INSERT INTO friends (user_id, friend_id) VALUES (?, ?)", rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO friends (user_id, friend_id) VALUES (?, ?)", rows);
+    }
+
+    /**
+     * Every user writes one review of a random film, reviews get identifiers from 1 to users
+     */
+    static void reviews(JdbcTemplate jdbcTemplate, int users, int films, Random random) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int user = 1; user <= users; user++) {
+            rows.add(new Object[]{"review " + user, random.nextBoolean(), user, 1 + random.nextInt(films)});
+            flush(jdbcTemplate, "INSERT INTO reviews (content, is_positive, user_id, film_id) VALUES (?, ?, ?, ?)",
+                    rows);
+        }
+        flushAll(jdbcTemplate, "INSERT INTO reviews (content, is_positive, user_id, film_id) VALUES (?, ?, ?, ?)",
+                rows);
+    }
+
+    /**
+     * Loads the in-memory indexes again from the seeded tables
+     */
+    static void rebuildIndexes(ConfigurableApplicationContext context) {
+        context.getBean(PopularityIndex.class).rebuild();
+        context.getBean(FilmSearchIndex.class).rebuild();
+        context.getBean(LikesIndex.class).rebuild();
+        context.getBean(SocialGraph.class).rebuild();
+        context.getBean(UserCache.class).rebuild();
+    }
+
+    private static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static void flush(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        if (rows.size() >= BATCH_SIZE) {
+            flushAll(jdbcTemplate, sql, rows);
+        }
+    }
+
+    private static void flushAll(JdbcTemplate jdbcTemplate, String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+}
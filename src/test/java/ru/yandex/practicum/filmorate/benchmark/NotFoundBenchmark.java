@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.FilmNotFoundException;
+import ru.yandex.practicum.filmorate.exception.FilmorateException;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of lookups by identifier under traffic probing random identifiers,
+ * as a crawler does. A share of the identifiers given by missRatio does not exist,
+ * such a lookup ends with a domain exception which is caught here as the error handler does.
+ * The caches are switched off, so every lookup goes to the database or the identifier bitmap.
+ * {@link #exceptionWithStackTrace()} and {@link #domainException()} show the cost of the exception alone.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=NotFoundBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class NotFoundBenchmark {
+
+    private static final int USERS = 1000;
+
+    private static final int DIRECTORS = 100;
+
+    private static final int IDS = 4096;
+
+    @Param({"0", "0.5", "1"})
+    public double missRatio;
+
+    @Param({"10000"})
+    public int films;
+
+    private ConfigurableApplicationContext context;
+
+    private FilmService filmService;
+
+    private UserService userService;
+
+    private ReviewService reviewService;
+
+    private DirectorService directorService;
+
+    private long[] filmIds;
+
+    private long[] userIds;
+
+    private long[] reviewIds;
+
+    private long[] directorIds;
+
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start("filmorate.cache.films.enabled=false", "filmorate.cache.users.enabled=false");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Random random = new Random(42);
+        BenchmarkData.users(jdbcTemplate, USERS);
+        BenchmarkData.films(jdbcTemplate, films, DIRECTORS, random);
+        BenchmarkData.reviews(jdbcTemplate, USERS, films, random);
+        BenchmarkData.rebuildIndexes(context);
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+        reviewService = context.getBean(ReviewService.class);
+        directorService = context.getBean(DirectorService.class);
+        filmIds = ids(random, films);
+        userIds = ids(random, USERS);
+        reviewIds = ids(random, USERS);
+        directorIds = ids(random, DIRECTORS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object findFilm() {
+        try {
+            return filmService.findFilmById(filmIds[nextIndex()]);
+        } catch (FilmorateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findUser() {
+        try {
+            return userService.findUserById(userIds[nextIndex()]);
+        } catch (FilmorateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findReview() {
+        try {
+            return reviewService.get(reviewIds[nextIndex()]);
+        } catch (FilmorateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object findDirector() {
+        try {
+            return directorService.findDirectorById(directorIds[nextIndex()]);
+        } catch (FilmorateException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public Object exceptionWithStackTrace() {
+        return new IllegalStateException("film with id 1 not found");
+    }
+
+    @Benchmark
+    public Object domainException() {
+        return new FilmNotFoundException("film with id 1 not found");
+    }
+
+    /**
+     * Identifiers from 1 to existing, the missing share of them is moved beyond the existing ones
+     */
+    private long[] ids(Random random, int existing) {
+        long[] ids = new long[IDS];
+        for (int i = 0; i < IDS; i++) {
+            long id = 1 + random.nextInt(existing);
+            ids[i] = random.nextDouble() < missRatio ? id + existing : id;
+        }
+        return ids;
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (IDS - 1);
+        return next;
+    }
+}
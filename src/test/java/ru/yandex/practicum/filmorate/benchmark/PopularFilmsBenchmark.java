@@ -0,0 +1,76 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the popular films against the number of requested films.
+ * The order comes from the popularity index and films are hydrated by one query per association,
+ * the film cache is switched off, so every call reads the films from the database.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=PopularFilmsBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class PopularFilmsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int count;
+
+    @Param({"10000"})
+    public int films;
+
+    private ConfigurableApplicationContext context;
+
+    private FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start("filmorate.cache.films.enabled=false");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Random random = new Random(42);
+        BenchmarkData.users(jdbcTemplate, 1000);
+        BenchmarkData.films(jdbcTemplate, films, 100, random);
+        BenchmarkData.likes(jdbcTemplate, 1000, films, 50, random);
+        BenchmarkData.rebuildIndexes(context);
+        filmService = context.getBean(FilmService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Film> popular() {
+        return filmService.getPopularFilms(count, null, null);
+    }
+
+    @Benchmark
+    public List<Film> popularByGenreAndYear() {
+        return filmService.getPopularFilms(count, 2, 1990);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.SearchParam;
+import ru.yandex.practicum.filmorate.storage.index.FilmSearchIndex;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Film search by title and director through the trigram index against the SQL search it replaced,
+ * a four-way join filtered by ILIKE and grouped to order by likes. Both return identifiers in the same order,
+ * hydration of films is not measured.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=SearchBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx6g")
+public class SearchBenchmark {
+
+    private static final String SQL_SEARCH = "SELECT F.FILM_ID FROM FILMS F "
+            + "LEFT JOIN RATING_MPA R ON F.RATING_MPA_ID=R.MPA_ID "
+            + "LEFT JOIN FILM_DIRECTORS FD on F.FILM_ID = FD.FILM_ID "
+            + "LEFT JOIN DIRECTORS D on FD.DIRECTOR_ID = D.DIRECTOR_ID "
+            + "LEFT JOIN FILM_LIKES FL on F.FILM_ID = FL.FILM_ID "
+            + "WHERE D.DIRECTOR_NAME ILIKE '%'||?||'%' "
+            + "OR F.FILM_NAME ILIKE '%'||?||'%' "
+            + "GROUP BY F.FILM_ID "
+            + "ORDER BY COUNT(FL.USER_ID) DESC, F.FILM_ID";
+
+    @Param({"10000", "100000", "1000000"})
+    public int films;
+
+    @Param({"golden riv", "ght"})
+    public String query;
+
+    private ConfigurableApplicationContext context;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private FilmSearchIndex searchIndex;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start();
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Random random = new Random(42);
+        BenchmarkData.users(jdbcTemplate, 1000);
+        BenchmarkData.films(jdbcTemplate, films, films / 100, random);
+        BenchmarkData.likes(jdbcTemplate, 1000, films, 20, random);
+        BenchmarkData.rebuildIndexes(context);
+        searchIndex = context.getBean(FilmSearchIndex.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Long> trigramIndex() {
+        return searchIndex.search(query, EnumSet.of(SearchParam.title, SearchParam.director));
+    }
+
+    @Benchmark
+    public List<Long> sql() {
+        return jdbcTemplate.queryForList(SQL_SEARCH, Long.class, query, query);
+    }
+}
@@ -0,0 +1,113 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.index.TimelineIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of pushing one feed event to the timelines of followers of its author against the number of followers,
+ * all timelines of the followers are cached. The push is made on the calling thread, as the fan-out thread does.
+ * {@link #readOlderThanTimeline()} reads a page older than the events kept in a timeline,
+ * which is pulled from the feed of every friend.
+ * <p>
+ * {@code mvn -Pbenchmark test-compile exec:exec -Djmh.args=TimelineFanoutBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class TimelineFanoutBenchmark {
+
+    private static final long AUTHOR_ID = 1;
+
+    private static final int EVENTS_PER_USER = 20;
+
+    private static final int TIMELINE_SIZE = 200;
+
+    @Param({"10", "100", "1000"})
+    public int followers;
+
+    private ConfigurableApplicationContext context;
+
+    private TimelineIndex timelineIndex;
+
+    private long nextEventId;
+
+    private Long oldestKeptEventId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkData.start("filmorate.timeline.size=" + TIMELINE_SIZE, "filmorate.timeline.fanout-limit=10000");
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        Random random = new Random(42);
+        int users = followers + 1;
+        BenchmarkData.users(jdbcTemplate, users);
+        BenchmarkData.friends(jdbcTemplate, users, 10, random);
+        List<Object[]> rows = new ArrayList<>();
+        for (int follower = 2; follower <= users; follower++) {
+            rows.add(new Object[]{follower, AUTHOR_ID});
+        }
+        jdbcTemplate.batchUpdate("MERGE INTO friends (user_id, friend_id) VALUES (?, ?)", rows);
+        rows.clear();
+        for (int event = 0; event < EVENTS_PER_USER; event++) {
+            for (int user = 1; user <= users; user++) {
+                rows.add(new Object[]{user, event});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO feed (event_time, user_id, event_type, operation, entity_id) "
+                + "VALUES (CURRENT_TIMESTAMP, ?, 'LIKE', 'ADD', ?)", rows);
+        BenchmarkData.rebuildIndexes(context);
+        timelineIndex = context.getBean(TimelineIndex.class);
+        for (long user = 2; user <= users; user++) {
+            timelineIndex.eventIds(user, null, 1);
+        }
+        List<Long> kept = timelineIndex.eventIds(2L, null, TIMELINE_SIZE);
+        oldestKeptEventId = kept.get(kept.size() - 1);
+        nextEventId = jdbcTemplate.queryForObject("SELECT MAX(event_id) FROM feed", Long.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void fanOut() {
+        timelineIndex.fanOut(Feed.builder()
+                .eventId(++nextEventId)
+                .timestamp(System.currentTimeMillis())
+                .userId(AUTHOR_ID)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(1L)
+                .build());
+    }
+
+    @Benchmark
+    public List<Long> readOlderThanTimeline() {
+        return timelineIndex.eventIds(2L, oldestKeptEventId, 20);
+    }
+}
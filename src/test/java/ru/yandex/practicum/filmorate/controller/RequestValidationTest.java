@@ -0,0 +1,131 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.exception.ValidationException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Checks that constraints of request parameters are enforced and that streaming returns every film and user.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:request-validation")
+@AutoConfigureMockMvc
+class RequestValidationTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void notPositiveLimitsAreRejected() throws Exception {
+        mockMvc.perform(get("/films/popular").param("count", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/popular").param("count", "-1")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/suggest").param("prefix", "a").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/suggest").param("prefix", " ")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films/search").param("query", "").param("by", "title"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/films").param("limit", String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users").param("limit", String.valueOf(UserService.MAX_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/friends/suggestions").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/feed").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/feed").param("limit", String.valueOf(UserService.MAX_FEED_PAGE_SIZE + 1)))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/timeline").param("limit", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/timeline").param("limit", String.valueOf(Integer.MAX_VALUE)))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void separationDepthOutOfRangeIsRejected() throws Exception {
+        mockMvc.perform(get("/users/1/separation/2").param("maxDepth", "0")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/users/1/separation/2").param("maxDepth", "7")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void serviceRejectsNotPositiveSuggestionLimit() {
+        assertThrows(ValidationException.class, () -> userService.suggestFriends(1L, 0));
+        assertThrows(ValidationException.class, () -> userService.separation(1L, 2L, 0));
+    }
+
+    @Test
+    void streamReturnsAllFilmsAcrossChunks() throws Exception {
+        int before = filmService.findAll().size();
+        for (int i = 0; i < 250; i++) {
+            filmService.create(Film.builder()
+                    .name("film " + i)
+                    .description("description")
+                    .releaseDate(LocalDate.of(2000, 1, 1))
+                    .duration(100)
+                    .mpa(Mpa.builder().id(1).build())
+                    .genres(new TreeSet<>())
+                    .directors(new HashSet<>())
+                    .build());
+        }
+
+        MvcResult started = mockMvc.perform(get("/films").param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(before + 250, objectMapper.readTree(body).size());
+    }
+
+    @Test
+    void streamReturnsAllUsersAcrossChunks() throws Exception {
+        int before = userService.findAll().size();
+        for (int i = 0; i < 250; i++) {
+            userService.create(User.builder()
+                    .login("stream" + i)
+                    .name("stream" + i)
+                    .email("stream" + i + "@mail.ru")
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .friends(new HashSet<>())
+                    .build());
+        }
+
+        MvcResult started = mockMvc.perform(get("/users").param("stream", "true"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(before + 250, objectMapper.readTree(body).size());
+    }
+}
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Opens feed streams while events are added and checks that every stream receives the stored events
+ * after its start and the new ones once in order, and that closed streams are forgotten.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:feed-stream",
+        "filmorate.feed.writer.mode=SYNC"})
+@AutoConfigureMockMvc
+class FeedStreamServiceTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("^id:(\\d+)$", Pattern.MULTILINE);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FeedDbStorageImpl feedDbStorage;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void streamsReceiveStoredAndNewEventsOnceInOrder() throws Exception {
+        Long userId = userService.create(User.builder()
+                .login("stream")
+                .name("stream")
+                .email("stream@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friends(new HashSet<>())
+                .build()).getId();
+        List<Long> ids = new ArrayList<>();
+        for (long i = 0; i < 5; i++) {
+            ids.add(add(userId, i));
+        }
+
+        List<MvcResult> streams = new ArrayList<>();
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Long after = ids.get(i % ids.size());
+            starts.add(after);
+            streams.add(mockMvc.perform(get("/users/{id}/feed/stream", userId).param("afterEventId", after.toString()))
+                    .andExpect(request().asyncStarted())
+                    .andReturn());
+            ids.add(add(userId, i));
+        }
+        Long last = ids.get(ids.size() - 1);
+
+        for (int i = 0; i < streams.size(); i++) {
+            Long after = starts.get(i);
+            List<Long> expected = new ArrayList<>();
+            ids.stream().filter(id -> id > after).forEach(expected::add);
+            assertEquals(expected, received(streams.get(i), last), "stream started after event " + after);
+        }
+        assertEquals(1.0, usersWithStreams());
+
+        streams.forEach(stream -> stream.getRequest().getAsyncContext().complete());
+        assertEquals(0.0, usersWithStreams());
+    }
+
+    private Long add(Long userId, long entityId) {
+        return feedDbStorage.add(Feed.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(entityId)
+                .build()).getEventId();
+    }
+
+    /**
+     * Waits until the stream sends the last event and returns identifiers of all sent events
+     */
+    private List<Long> received(MvcResult stream, Long last) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        List<Long> ids;
+        do {
+            ids = new ArrayList<>();
+            Matcher matcher = EVENT_ID.matcher(stream.getResponse().getContentAsString());
+            while (matcher.find()) {
+                ids.add(Long.valueOf(matcher.group(1)));
+            }
+            if (ids.contains(last)) {
+                break;
+            }
+            Thread.sleep(10);
+        } while (System.currentTimeMillis() < deadline);
+        return ids;
+    }
+
+    private double usersWithStreams() {
+        return meterRegistry.get("filmorate.feed.stream.users").gauge().value();
+    }
+}
@@ -0,0 +1,61 @@
+package ru.yandex.practicum.filmorate.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay;
+
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that a cached film is read with a changed like before the outbox relay passes the event,
+ * the relay is replaced by a mock which never dispatches events.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:film-service")
+class FilmServiceTest {
+
+    @MockBean
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void likeIsReadWithoutOutboxDispatch() {
+        Long userId = userService.create(User.builder()
+                .login("liker")
+                .name("liker")
+                .email("liker@mail.ru")
+                .birthday(LocalDate.of(1990, 1, 1))
+                .friends(new HashSet<>())
+                .build()).getId();
+        Long filmId = filmService.create(Film.builder()
+                .name("film")
+                .description("description")
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .duration(100)
+                .mpa(Mpa.builder().id(1).build())
+                .genres(new TreeSet<>())
+                .directors(new HashSet<>())
+                .build()).getId();
+        assertEquals(Set.of(), filmService.findFilmById(filmId).getLikes());
+
+        filmService.likeFilm(filmId, userId);
+        assertEquals(Set.of(userId), filmService.findFilmById(filmId).getLikes());
+
+        filmService.deleteLikeFilm(filmId, userId);
+        assertEquals(Set.of(), filmService.findFilmById(filmId).getLikes());
+    }
+}
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the pages of the feed: without cursors the newest events, then pages in both directions.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:feed-pages",
+        "filmorate.feed.writer.mode=SYNC"})
+class FeedDbStorageImplTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FeedDbStorageImpl feedDbStorage;
+
+    @Test
+    void pagesAreReadByCursors() {
+        jdbcTemplate.update("INSERT INTO users (user_name, login, email, birthday) "
+                + "VALUES ('user', 'feed', 'feed@mail.ru', '1990-01-01')");
+        Long userId = jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM users", Long.class);
+        List<Long> ids = new ArrayList<>();
+        for (long i = 1; i <= 25; i++) {
+            ids.add(addLike(userId, i).getEventId());
+        }
+
+        assertEquals(ids.subList(15, 25), eventIds(feedDbStorage.get(userId, null, null, 10)));
+        assertEquals(ids, eventIds(feedDbStorage.get(userId, null, null, 100)));
+        assertEquals(ids.subList(5, 15), eventIds(feedDbStorage.get(userId, null, ids.get(15), 10)));
+        assertEquals(ids.subList(0, 5), eventIds(feedDbStorage.get(userId, null, ids.get(5), 10)));
+        assertEquals(ids.subList(10, 20), eventIds(feedDbStorage.get(userId, ids.get(9), null, 10)));
+        assertEquals(ids.subList(10, 12), eventIds(feedDbStorage.get(userId, ids.get(9), ids.get(12), 10)));
+        assertEquals(List.of(), eventIds(feedDbStorage.get(userId, ids.get(24), null, 10)));
+    }
+
+    private Feed addLike(Long userId, Long filmId) {
+        return feedDbStorage.add(Feed.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(filmId)
+                .build());
+    }
+
+    private static List<Long> eventIds(List<Feed> events) {
+        return events.stream().map(Feed::getEventId).collect(Collectors.toList());
+    }
+}
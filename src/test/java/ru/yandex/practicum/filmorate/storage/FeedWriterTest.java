@@ -0,0 +1,265 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.storage.impl.FeedWriter;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Appends events from several threads in every mode of the feed writer and checks that every event
+ * is written and published once, that events queued together are written in one batch
+ * while a lone event is not delayed, that a full queue blocks producers and that shutdown drains the queue.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:feed-writer",
+        "filmorate.feed.writer.mode=SYNC"})
+class FeedWriterTest {
+
+    private static final int THREADS = 8;
+
+    private static final int EVENTS_PER_THREAD = 200;
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final List<Feed> published = new ArrayList<>();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private Long userId;
+
+    @BeforeEach
+    void createUser() {
+        jdbcTemplate.update("DELETE FROM feed");
+        int n = SEQUENCE.incrementAndGet();
+        jdbcTemplate.update("INSERT INTO users (user_name, login, email, birthday) VALUES (?, ?, ?, ?)",
+                "user", "writer" + n, "writer" + n + "@mail.ru", "1990-01-01");
+        userId = jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM users", Long.class);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FeedWriter.Mode.class)
+    void concurrentEventsAreWrittenAndPublishedOnce(FeedWriter.Mode mode) throws Exception {
+        FeedWriter writer = writer(mode, 64, 16, 5, this::publish);
+        List<Long> returned = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(() -> {
+                    List<Long> ids = new ArrayList<>();
+                    for (int i = 0; i < EVENTS_PER_THREAD; i++) {
+                        Feed feed = writer.append(feed(i));
+                        if (mode != FeedWriter.Mode.FIRE_AND_FORGET) {
+                            assertEquals(1, countRows(feed.getEventId()), "event is readable when append returns");
+                        }
+                        ids.add(feed.getEventId());
+                    }
+                    return ids;
+                }));
+            }
+            for (Future<List<Long>> future : futures) {
+                returned.addAll(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        writer.shutdown();
+
+        Set<Long> unique = new HashSet<>(returned);
+        assertEquals(THREADS * EVENTS_PER_THREAD, unique.size(), "identifiers are unique");
+        assertEquals(unique, new HashSet<>(jdbcTemplate.queryForList("SELECT event_id FROM feed", Long.class)));
+        synchronized (published) {
+            assertEquals(unique, published.stream().map(Feed::getEventId).collect(Collectors.toSet()));
+            assertEquals(unique.size(), published.size(), "every event is published once");
+        }
+    }
+
+    @Test
+    void eventsOfOneBatchArePublishedInOrderOfIdentifiers() throws Exception {
+        FeedWriter writer = writer(FeedWriter.Mode.FIRE_AND_FORGET, 1024, 1024, 50, this::publish);
+        for (int i = 0; i < 500; i++) {
+            writer.append(feed(i));
+        }
+        writer.shutdown();
+
+        List<Long> ids = published.stream().map(Feed::getEventId).collect(Collectors.toList());
+        assertEquals(ids.stream().sorted().collect(Collectors.toList()), ids);
+    }
+
+    @Test
+    void concurrentAppendsAreWrittenInOneBatch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        FeedWriter writer = writer(FeedWriter.Mode.GROUP_COMMIT, 64, 64, 5, feed -> {
+            if (blocked.getCount() > 0) {
+                blocked.countDown();
+                await(release);
+            }
+            publish(feed);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS + 1);
+        try {
+            executor.submit(() -> writer.append(feed(0)));
+            assertTrue(blocked.await(10, TimeUnit.SECONDS), "writer took the first event");
+            List<Future<Feed>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                long entityId = thread + 1;
+                futures.add(executor.submit(() -> writer.append(feed(entityId))));
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (meterRegistry.get("filmorate.feed.writer.queue").gauge().value() < THREADS
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<Feed> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        writer.shutdown();
+
+        DistributionSummary batches = meterRegistry.get("filmorate.feed.writer.batch").summary();
+        assertEquals(2, batches.count(), "the first event and then all queued events");
+        assertEquals(THREADS, batches.max());
+        assertEquals(THREADS + 1, published.size());
+    }
+
+    @Test
+    void loneEventIsNotDelayed() throws Exception {
+        FeedWriter writer = writer(FeedWriter.Mode.GROUP_COMMIT, 64, 64, 10_000, this::publish);
+        writer.append(feed(0));
+        long started = System.nanoTime();
+        writer.append(feed(1));
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        writer.shutdown();
+
+        assertTrue(elapsedMillis < 5_000, "append waited " + elapsedMillis + " ms");
+        assertEquals(2, countAll());
+    }
+
+    @Test
+    void fullQueueBlocksProducer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        FeedWriter writer = writer(FeedWriter.Mode.FIRE_AND_FORGET, 1, 1, 0, feed -> {
+            blocked.countDown();
+            await(release);
+            publish(feed);
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            writer.append(feed(1));
+            assertTrue(blocked.await(10, TimeUnit.SECONDS), "writer took the first event");
+            writer.append(feed(2));
+            Future<Feed> third = executor.submit(() -> writer.append(feed(3)));
+
+            assertThrows(TimeoutException.class, () -> third.get(300, TimeUnit.MILLISECONDS));
+            assertFalse(third.isDone(), "producer waits while the queue is full");
+
+            release.countDown();
+            third.get(10, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        writer.shutdown();
+
+        assertEquals(3, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class));
+    }
+
+    @Test
+    void shutdownDrainsQueue() throws Exception {
+        FeedWriter writer = writer(FeedWriter.Mode.FIRE_AND_FORGET, 1024, 1024, 60_000, this::publish);
+        for (int i = 0; i < 300; i++) {
+            writer.append(feed(i));
+        }
+        writer.shutdown();
+
+        assertEquals(300, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class));
+        assertEquals(300, published.size());
+
+        writer.append(feed(300));
+        assertEquals(301, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class),
+                "event appended after shutdown is written by the caller");
+    }
+
+    private FeedWriter writer(FeedWriter.Mode mode, int queueCapacity, int batchSize, long maxDelayMillis,
+                              Consumer<Feed> listener) {
+        ApplicationEventPublisher publisher = event -> listener.accept((Feed) event);
+        FeedWriter writer = new FeedWriter(jdbcTemplate, transactionManager, publisher, meterRegistry,
+                mode, queueCapacity, batchSize, maxDelayMillis);
+        writer.init();
+        return writer;
+    }
+
+    private void publish(Feed feed) {
+        synchronized (published) {
+            published.add(feed);
+        }
+    }
+
+    private Feed feed(long entityId) {
+        return Feed.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(entityId)
+                .build();
+    }
+
+    private int countAll() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed", Integer.class);
+    }
+
+    private int countRows(Long eventId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM feed WHERE event_id = ?", Integer.class, eventId);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Migrates a database created by the schema.sql used before Flyway, as it is done on start
+ * with {@code spring.flyway.baseline-on-migrate}, and checks that the later columns and indexes are added.
+ */
+class MigrationTest {
+
+    @Test
+    void databaseOfOldSchemaIsMigrated() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+                "jdbc:h2:mem:old-schema;DB_CLOSE_DELAY=-1", "sa", "password");
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__init_schema.sql"),
+                new ClassPathResource("db/migration/V2__reference_data.sql")).execute(dataSource);
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO users (user_name, login, email, birthday) "
+                + "VALUES ('user', 'old', 'old@mail.ru', '1990-01-01')");
+        jdbcTemplate.update("INSERT INTO films (film_name, release_date, duration, rating_mpa_id) "
+                + "VALUES ('film', '2000-01-01', 100, 1)");
+        jdbcTemplate.update("INSERT INTO film_likes (film_id, user_id) "
+                + "SELECT MAX(film_id), MAX(user_id) FROM films, users");
+
+        Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate();
+
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT likes_count FROM films", Integer.class));
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.INDEXES "
+                + "WHERE INDEX_NAME = 'FILMS_LIKES_COUNT_IDX'", Integer.class));
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox", Integer.class));
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.storage.impl.DirectorDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.FilmDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.FilmGenreDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.FriendsStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.LikesDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.ReviewDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.ReviewLikeDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.impl.UserDbStorageImpl;
+import ru.yandex.practicum.filmorate.storage.index.TimelineIndex;
+import ru.yandex.practicum.filmorate.storage.outbox.OutboxRelay;
+
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that hot queries of the storages are served by indexes.
+ * The queries are the constants the storages execute, every one is explained by H2 with sample parameters
+ * and the plan must not contain a table scan. Queries answered by a covering index must use that index.
+ */
+@SpringBootTest
+class QueryPlanTest {
+
+    private static final Long[] IDS = {1L, 2L};
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    static Stream<Arguments> hotQueries() {
+        return Stream.of(
+                query(FilmDbStorageImpl.FIND_BY_ID, 1L),
+                query(FilmDbStorageImpl.FIND_BY_IDS, (Object) IDS),
+                query(FilmDbStorageImpl.FIND_PAGE, 1L, 10),
+                query(FilmDbStorageImpl.EXISTS_BY_ID, 1L),
+                query(FilmDbStorageImpl.FIND_BY_DIRECTOR_ORDER_BY_LIKES, 1L),
+                query(FilmDbStorageImpl.FIND_BY_DIRECTOR_ORDER_BY_YEAR, 1L),
+                query(FilmGenreDbStorageImpl.FIND_BY_FILM_IDS, (Object) IDS),
+                query(DirectorDbStorageImpl.FIND_BY_FILM_IDS, (Object) IDS),
+                query(LikesDbStorageImpl.FIND_BY_FILM_IDS, (Object) IDS),
+                query(LikesDbStorageImpl.DELETE_LIKE, 1L, 1L),
+                query(LikesDbStorageImpl.EXISTS_LIKE, 1L, 1L),
+                query(UserDbStorageImpl.FIND_BY_ID, 1L),
+                query(UserDbStorageImpl.FIND_BY_IDS, (Object) IDS),
+                query(UserDbStorageImpl.FIND_PAGE, 1L, 10),
+                query(UserDbStorageImpl.FIND_FRIEND_IDS, 1L),
+                query(UserDbStorageImpl.FIND_FRIENDS, 1L),
+                query(UserDbStorageImpl.FIND_LIKED_FILM_IDS, 1L),
+                query(UserDbStorageImpl.DECREMENT_LIKES_OF_USER, 1L),
+                query(UserDbStorageImpl.SUBTRACT_REACTIONS_OF_USER, 1L, 1L),
+                query(FriendsStorageImpl.DELETE_FRIEND, 1L, 2L),
+                query(FeedDbStorageImpl.FIND_PAGE, 1L, 0L, 10L, 100),
+                query(FeedDbStorageImpl.FIND_PAGE_DESC, 1L, 0L, 10L, 100),
+                query(FeedDbStorageImpl.FIND_BY_IDS, (Object) IDS),
+                query(TimelineIndex.FIND_EVENT_IDS, IDS, 10L, 100),
+                query(OutboxRelay.DELETE_BY_IDS, (Object) IDS),
+                query(OutboxRelay.FIND_NEW, 0L, 100),
+                query(OutboxRelay.FIND_FAILED_AFTER, 0L, 100),
+                query(OutboxRelay.INCREMENT_ATTEMPTS, (Object) IDS),
+                query(ReviewDbStorageImpl.FIND_BY_ID, 1L),
+                query(ReviewDbStorageImpl.EXISTS_BY_ID, 1L),
+                query(ReviewDbStorageImpl.EXISTS_BY_FILM_AND_USER, 1L, 1L),
+                query(ReviewDbStorageImpl.FIND_BY_FILM, 1L, 10),
+                query(ReviewDbStorageImpl.FIND_BY_FILM_AFTER, 1L, 2, 2, 2L, 10),
+                query(ReviewDbStorageImpl.FIND_ALL, 10),
+                query(ReviewDbStorageImpl.FIND_ALL_AFTER, 2, 2, 2L, 10),
+                query(ReviewLikeDbStorageImpl.LOCK_REVIEW, 1L),
+                query(ReviewLikeDbStorageImpl.FIND_REACTION, 1L, 1L),
+                query(ReviewLikeDbStorageImpl.CHANGE_USEFUL, 1, 1L)
+        );
+    }
+
+    static Stream<Arguments> coveredQueries() {
+        return Stream.of(
+                covered("REVIEW_LIKE_REACTION_IDX", ReviewLikeDbStorageImpl.EXISTS_REACTION, 1L, 1L, true),
+                covered("FEED_USER_EVENT_IDX", TimelineIndex.FIND_EVENT_IDS, IDS, 10L, 100),
+                covered("FILM_LIKES_USER_IDX", UserDbStorageImpl.FIND_LIKED_FILM_IDS, 1L)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("hotQueries")
+    void hotQueryDoesNotScanTable(String sql, Object[] parameters) {
+        String plan = explain(sql, parameters);
+        assertFalse(plan.contains(".tableScan"), plan);
+    }
+
+    @ParameterizedTest
+    @MethodSource("coveredQueries")
+    void lookupUsesCoveringIndex(String index, String sql, Object[] parameters) {
+        String plan = explain(sql, parameters);
+        assertTrue(plan.contains(index), plan);
+    }
+
+    private String explain(String sql, Object[] parameters) {
+        return String.join("\n", jdbcTemplate.query("EXPLAIN " + sql,
+                ps -> {
+                    for (int i = 0; i < parameters.length; i++) {
+                        if (parameters[i] instanceof Long[]) {
+                            ps.setArray(i + 1, ps.getConnection().createArrayOf("BIGINT", (Long[]) parameters[i]));
+                        } else {
+                            ps.setObject(i + 1, parameters[i]);
+                        }
+                    }
+                },
+                (rs, i) -> rs.getString(1)));
+    }
+
+    private static Arguments query(String sql, Object... parameters) {
+        return Arguments.of(sql, parameters);
+    }
+
+    private static Arguments covered(String index, String sql, Object... parameters) {
+        return Arguments.of(index, sql, parameters);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.exception.NoSuchReactFind;
+import ru.yandex.practicum.filmorate.storage.cache.UserCache;
+import ru.yandex.practicum.filmorate.storage.impl.ReviewLikeDbStorageImpl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Changes reactions of the same users on the same review from several threads at once
+ * and checks that the usefulness counter equals the sum of the reactions,
+ * also after users with reactions are deleted.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:review-like")
+class ReviewLikeDbStorageImplTest {
+
+    private static final int USERS = 4;
+
+    private static final int THREADS = 8;
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ReviewLikeDbStorageImpl reviewLikeDbStorage;
+
+    @Autowired
+    private UserStorage userStorage;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Test
+    void concurrentReactionsKeepUsefulConsistent() throws Exception {
+        List<Long> users = createUsers();
+        Long reviewId = createReview(users.get(0));
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                Random random = new Random(thread);
+                futures.add(executor.submit(() -> {
+                    for (int step = 0; step < 100; step++) {
+                        Long userId = users.get(random.nextInt(USERS));
+                        boolean isUseful = random.nextBoolean();
+                        if (random.nextInt(3) == 0) {
+                            try {
+                                reviewLikeDbStorage.deleteReaction(reviewId, userId, isUseful);
+                            } catch (NoSuchReactFind ignored) {
+                                // the user has no such reaction at the moment
+                            }
+                        } else {
+                            reviewLikeDbStorage.addReaction(reviewId, userId, isUseful);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertUsefulMatchesReactions(reviewId);
+    }
+
+    @Test
+    void deletedUserReactionsAreSubtractedFromUseful() {
+        List<Long> users = createUsers();
+        Long reviewId = createReview(users.get(0));
+        Long otherReviewId = createReview(users.get(1));
+        reviewLikeDbStorage.addReaction(reviewId, users.get(1), true);
+        reviewLikeDbStorage.addReaction(reviewId, users.get(2), true);
+        reviewLikeDbStorage.addReaction(reviewId, users.get(3), false);
+        reviewLikeDbStorage.addReaction(otherReviewId, users.get(2), false);
+        reviewLikeDbStorage.addReaction(otherReviewId, users.get(3), false);
+
+        userStorage.deleteUserById(users.get(2));
+        assertEquals(0, useful(reviewId));
+        assertEquals(-1, useful(otherReviewId));
+
+        userStorage.deleteUserById(users.get(3));
+        assertEquals(1, useful(reviewId));
+        assertEquals(0, useful(otherReviewId));
+        assertUsefulMatchesReactions(reviewId);
+        assertUsefulMatchesReactions(otherReviewId);
+    }
+
+    private List<Long> createUsers() {
+        List<Long> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            int n = SEQUENCE.incrementAndGet();
+            jdbcTemplate.update("INSERT INTO users (user_name, login, email, birthday) VALUES (?, ?, ?, ?)",
+                    "user" + n, "reaction" + n, "reaction" + n + "@mail.ru", "1990-01-01");
+            Long userId = jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM users", Long.class);
+            userCache.onUserCreated(userId);
+            users.add(userId);
+        }
+        return users;
+    }
+
+    private Long createReview(Long userId) {
+        jdbcTemplate.update("INSERT INTO films (film_name, description, release_date, duration, rating_mpa_id) "
+                + "VALUES ('film', 'description', '2000-01-01', 100, 1)");
+        Long filmId = jdbcTemplate.queryForObject("SELECT MAX(film_id) FROM films", Long.class);
+        jdbcTemplate.update("INSERT INTO reviews (content, is_positive, user_id, film_id) VALUES ('review', true, ?, ?)",
+                userId, filmId);
+        return jdbcTemplate.queryForObject("SELECT MAX(review_id) FROM reviews", Long.class);
+    }
+
+    private int useful(Long reviewId) {
+        return jdbcTemplate.queryForObject("SELECT useful FROM reviews WHERE review_id = ?", Integer.class, reviewId);
+    }
+
+    private void assertUsefulMatchesReactions(Long reviewId) {
+        assertEquals(jdbcTemplate.queryForObject("SELECT COALESCE(SUM(CASE WHEN is_useful THEN 1 ELSE -1 END), 0) "
+                + "FROM review_like WHERE review_id = ?", Integer.class, reviewId), useful(reviewId));
+        assertEquals(0, reviewLikeDbStorage.reconcileUseful());
+    }
+}
@@ -0,0 +1,157 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the film cache against a map standing for the database: every read returns the current state
+ * as long as every change is followed by invalidation, and returned films are copies.
+ */
+class FilmCacheTest {
+
+    private final Map<Long, Film> database = new HashMap<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<Long, Film> loader = id -> {
+        loads.incrementAndGet();
+        return copy(database.get(id));
+    };
+
+    private final Function<List<Long>, Map<Long, Film>> batchLoader = ids -> {
+        loads.incrementAndGet();
+        return ids.stream()
+                .filter(database::containsKey)
+                .collect(Collectors.toMap(Function.identity(), id -> copy(database.get(id))));
+    };
+
+    @Test
+    void readsMatchDatabaseAfterRandomChanges() {
+        Random random = new Random(17);
+        FilmCache cache = new FilmCache(true, 50, new SimpleMeterRegistry());
+        for (long id = 1; id <= 100; id++) {
+            database.put(id, film(id));
+        }
+        for (int step = 0; step < 5000; step++) {
+            long id = 1 + random.nextInt(100);
+            int action = random.nextInt(10);
+            if (action < 2) {
+                database.get(id).getLikes().add((long) random.nextInt(20));
+                cache.onEvent(likeEvent(id));
+            } else if (action < 3) {
+                database.get(id).setName("film " + id + " v" + step);
+                cache.invalidate(id);
+            } else if (action < 6) {
+                assertEquals(database.get(id), cache.get(id, loader));
+            } else {
+                List<Long> ids = random.ints(5, 1, 120).mapToObj(Long::valueOf).collect(Collectors.toList());
+                List<Film> expected = ids.stream().filter(database::containsKey).map(database::get)
+                        .collect(Collectors.toList());
+                assertEquals(expected, cache.getAll(ids, batchLoader));
+            }
+        }
+    }
+
+    @Test
+    void hitDoesNotLoadAndReturnsCopy() {
+        FilmCache cache = new FilmCache(true, 100, new SimpleMeterRegistry());
+        database.put(1L, film(1));
+
+        cache.get(1L, loader).getLikes().add(42L);
+        Film film = cache.get(1L, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(Set.of(), film.getLikes());
+    }
+
+    @Test
+    void getAllLoadsOnlyMissingFilms() {
+        FilmCache cache = new FilmCache(true, 100, new SimpleMeterRegistry());
+        database.put(1L, film(1));
+        database.put(2L, film(2));
+        cache.get(1L, loader);
+        List<Long> requested = new ArrayList<>();
+
+        List<Film> films = cache.getAll(List.of(2L, 3L, 1L), ids -> {
+            requested.addAll(ids);
+            return batchLoader.apply(ids);
+        });
+
+        assertEquals(List.of(2L, 3L), requested);
+        assertEquals(List.of(2L, 1L), films.stream().map(Film::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void otherEventsDoNotInvalidate() {
+        FilmCache cache = new FilmCache(true, 100, new SimpleMeterRegistry());
+        database.put(1L, film(1));
+        cache.get(1L, loader);
+
+        cache.onEvent(OutboxEvent.builder().eventType(EventType.FRIEND).operation(OperationType.ADD)
+                .userId(1L).entityId(1L).build());
+        cache.get(1L, loader);
+
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void invalidationIsRepeatedAfterCommit() {
+        FilmCache cache = new FilmCache(true, 100, new SimpleMeterRegistry());
+        database.put(1L, film(1));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidate(1L);
+            cache.get(1L, loader);
+            database.get(1L).setName("committed");
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertEquals("committed", cache.get(1L, loader).getName());
+    }
+
+    @Test
+    void disabledCacheAlwaysLoads() {
+        FilmCache cache = new FilmCache(false, 100, new SimpleMeterRegistry());
+        database.put(1L, film(1));
+
+        cache.get(1L, loader);
+        cache.get(1L, loader);
+        cache.getAll(List.of(1L), batchLoader);
+
+        assertEquals(3, loads.get());
+    }
+
+    private static OutboxEvent likeEvent(long filmId) {
+        return OutboxEvent.builder().eventType(EventType.LIKE).operation(OperationType.ADD)
+                .userId(1L).entityId(filmId).build();
+    }
+
+    private static Film film(long id) {
+        return Film.builder().id(id).name("film " + id).likes(new HashSet<>()).build();
+    }
+
+    private static Film copy(Film film) {
+        return film == null ? null : film.toBuilder().likes(new HashSet<>(film.getLikes())).build();
+    }
+}
@@ -0,0 +1,125 @@
+package ru.yandex.practicum.filmorate.storage.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks the user cache against maps standing for the database: existence checks and friends of cached users
+ * follow creations, deletions and friendship events without loading users again.
+ */
+class UserCacheTest {
+
+    private static final int USERS = 50;
+
+    private final Map<Long, Set<Long>> friends = new HashMap<>();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final Function<Long, User> loader = id -> {
+        loads.incrementAndGet();
+        return User.builder().id(id).login("user" + id).friends(new HashSet<>(friends.get(id))).build();
+    };
+
+    @Test
+    void usersMatchDatabaseAfterRandomChanges() {
+        Random random = new Random(19);
+        UserCache cache = newCache(true);
+        for (int step = 0; step < 5000; step++) {
+            long id = 1 + random.nextInt(USERS);
+            long otherId = 1 + random.nextInt(USERS);
+            int action = random.nextInt(20);
+            if (action < 3) {
+                friends.putIfAbsent(id, new HashSet<>());
+                cache.onUserCreated(id);
+            } else if (action < 4) {
+                friends.remove(id);
+                friends.values().forEach(f -> f.remove(id));
+                cache.onUserDeleted(id);
+            } else if (action < 8 && friends.containsKey(id) && friends.containsKey(otherId)) {
+                friends.get(id).add(otherId);
+                cache.onEvent(friendEvent(OperationType.ADD, id, otherId));
+            } else if (action < 11 && friends.containsKey(id)) {
+                friends.get(id).remove(otherId);
+                cache.onEvent(friendEvent(OperationType.REMOVE, id, otherId));
+            } else {
+                assertEquals(friends.containsKey(id), cache.contains(id), "existence of " + id);
+                if (friends.containsKey(id)) {
+                    assertEquals(friends.get(id), cache.get(id, loader).getFriends(), "friends of " + id);
+                }
+            }
+        }
+    }
+
+    @Test
+    void friendshipEventsUpdateCachedUserWithoutLoading() {
+        UserCache cache = newCache(true);
+        friends.put(1L, new HashSet<>());
+        cache.get(1L, loader);
+
+        cache.onFriendAdded(1L, 3L);
+        cache.onFriendAdded(1L, 2L);
+        cache.onFriendRemoved(1L, 3L);
+
+        assertEquals(Set.of(2L), cache.get(1L, loader).getFriends());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void deletedFriendDropsCachedUsers() {
+        UserCache cache = newCache(true);
+        friends.put(1L, new HashSet<>(Set.of(2L)));
+        friends.put(2L, new HashSet<>());
+        cache.onUserCreated(1L);
+        cache.onUserCreated(2L);
+        cache.get(1L, loader);
+
+        friends.get(1L).remove(2L);
+        friends.remove(2L);
+        cache.onUserDeleted(2L);
+
+        assertFalse(cache.contains(2L));
+        assertEquals(Set.of(), cache.get(1L, loader).getFriends());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void disabledCacheLoadsButAnswersExistence() {
+        UserCache cache = newCache(false);
+        friends.put(1L, new HashSet<>());
+        cache.onUserCreated(1L);
+
+        cache.get(1L, loader);
+        cache.get(1L, loader);
+
+        assertEquals(2, loads.get());
+        assertTrue(cache.contains(1L));
+        assertFalse(cache.contains(null));
+    }
+
+    private static UserCache newCache(boolean enabled) {
+        return new UserCache(mock(JdbcTemplate.class), enabled, 20, new SimpleMeterRegistry());
+    }
+
+    private static OutboxEvent friendEvent(OperationType operation, long userId, long friendId) {
+        return OutboxEvent.builder().eventType(EventType.FRIEND).operation(operation)
+                .userId(userId).entityId(friendId).build();
+    }
+}
@@ -0,0 +1,162 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.SearchParam;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.SuggestionType;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the search index with a plain scan over films and directors,
+ * keeping the semantics of the SQL search it replaced, and the suggestions with sorting of all matching names.
+ */
+class FilmSearchIndexTest {
+
+    private static final String[] WORDS = {"Dark", "Knight", "Star", "Wars", "Night", "Mare", "Tarantino", "Nolan"};
+
+    private PopularityIndex popularityIndex;
+
+    private FilmSearchIndex index;
+
+    private Map<Long, Film> films;
+
+    private Map<Long, Director> directors;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        popularityIndex = new PopularityIndex(jdbcTemplate, new SimpleMeterRegistry());
+        index = new FilmSearchIndex(jdbcTemplate, popularityIndex);
+        index.init();
+        films = new HashMap<>();
+        directors = new HashMap<>();
+    }
+
+    @Test
+    void searchMatchesPlainScanAfterRandomChanges() {
+        Random random = new Random(5);
+        for (int step = 0; step < 2000; step++) {
+            int action = random.nextInt(10);
+            if (action < 4) {
+                saveFilm(random);
+            } else if (action < 6) {
+                long id = 1 + random.nextInt(10);
+                Director director = Director.builder().id(id).name(name(random)).build();
+                index.onDirectorSaved(director);
+                directors.put(id, director);
+            } else if (action == 6) {
+                long id = 1 + random.nextInt(10);
+                index.onDirectorDeleted(id);
+                directors.remove(id);
+                films.values().forEach(film -> film.getDirectors().removeIf(d -> d.getId() == id));
+            } else if (action == 7) {
+                long id = 1 + random.nextInt(50);
+                index.onFilmDeleted(id);
+                popularityIndex.onFilmDeleted(id);
+                films.remove(id);
+            } else {
+                popularityIndex.onLikesChanged(1L + random.nextInt(50), 1);
+            }
+            if (step % 100 == 0) {
+                for (String query : new String[]{"dar", "NIGHT", "k", "star wars", "ino", "x"}) {
+                    assertSearch(query, EnumSet.of(SearchParam.title));
+                    assertSearch(query, EnumSet.of(SearchParam.director));
+                    assertSearch(query, EnumSet.of(SearchParam.title, SearchParam.director));
+                }
+                for (String prefix : new String[]{"d", "NI", "star", "k", "x"}) {
+                    assertSuggest(prefix, 5);
+                    assertSuggest(prefix, 100);
+                }
+            }
+        }
+    }
+
+    private void saveFilm(Random random) {
+        long id = 1 + random.nextInt(50);
+        Set<Director> filmDirectors = new HashSet<>();
+        if (!directors.isEmpty() && random.nextBoolean()) {
+            filmDirectors.add(List.copyOf(directors.values()).get(random.nextInt(directors.size())));
+        }
+        Film film = Film.builder()
+                .id(id)
+                .name(name(random))
+                .releaseDate(LocalDate.of(2000, 1, 1))
+                .directors(filmDirectors)
+                .build();
+        index.onFilmSaved(film);
+        popularityIndex.onFilmSaved(film);
+        films.put(id, film);
+    }
+
+    private void assertSearch(String query, EnumSet<SearchParam> params) {
+        String normalized = query.toLowerCase(Locale.ROOT);
+        boolean byDirector = params.contains(SearchParam.director);
+        boolean byTitle = params.contains(SearchParam.title) || !byDirector;
+        List<Long> expected = films.values().stream()
+                .filter(film -> byTitle && film.getName().toLowerCase(Locale.ROOT).contains(normalized)
+                        || byDirector && film.getDirectors().stream()
+                        .anyMatch(d -> directors.containsKey(d.getId())
+                                && directors.get(d.getId()).getName().toLowerCase(Locale.ROOT).contains(normalized)))
+                .map(Film::getId)
+                .sorted(Comparator.comparingInt(popularityIndex::likes).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+        assertEquals(expected, index.search(query, params), "query '" + query + "' by " + params);
+    }
+
+    private void assertSuggest(String prefix, int limit) {
+        String normalized = prefix.toLowerCase(Locale.ROOT);
+        Stream<Suggestion> filmSuggestions = films.values().stream()
+                .map(film -> Suggestion.builder()
+                        .type(SuggestionType.film)
+                        .id(film.getId())
+                        .name(film.getName())
+                        .popularity(popularityIndex.likes(film.getId()))
+                        .build());
+        Stream<Suggestion> directorSuggestions = directors.values().stream()
+                .map(director -> Suggestion.builder()
+                        .type(SuggestionType.director)
+                        .id(director.getId())
+                        .name(director.getName())
+                        .popularity(films.values().stream()
+                                .filter(film -> film.getDirectors().stream().anyMatch(d -> d.getId().equals(director.getId())))
+                                .mapToInt(film -> popularityIndex.likes(film.getId()))
+                                .sum())
+                        .build());
+        List<Suggestion> expected = Stream.concat(filmSuggestions, directorSuggestions)
+                .filter(suggestion -> Arrays.stream(suggestion.getName().toLowerCase(Locale.ROOT).split(" "))
+                        .anyMatch(word -> word.startsWith(normalized)))
+                .sorted(Comparator.comparingInt(Suggestion::getPopularity).reversed()
+                        .thenComparing(Suggestion::getName)
+                        .thenComparing(suggestion -> suggestion.getId() * 2
+                                + (suggestion.getType() == SuggestionType.director ? 1 : 0)))
+                .limit(limit)
+                .collect(Collectors.toList());
+        assertEquals(expected, index.suggest(prefix, limit), "prefix '" + prefix + "' limit " + limit);
+    }
+
+    private static String name(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,212 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Changes data through the services and checks that every in-memory index
+ * is equal to the index loaded again from the database and that cached entities match their rows.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:index-consistency")
+class IndexConsistencyTest {
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private FilmService filmService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private PopularityIndex popularityIndex;
+
+    @Autowired
+    private LikesIndex likesIndex;
+
+    @Autowired
+    private SocialGraph socialGraph;
+
+    @Test
+    void popularityIndexMatchesDatabaseAfterLikesAndDeletions() {
+        Random random = new Random(11);
+        List<Long> users = createUsers(5);
+        List<Long> films = createFilms(6, random);
+        randomLikes(users, films, random, 60);
+        filmService.deleteFilmById(films.get(0));
+        userService.deleteUserById(users.get(0));
+
+        PopularityIndex loaded = new PopularityIndex(jdbcTemplate, new SimpleMeterRegistry());
+        loaded.rebuild();
+        assertEquals(loaded.top(Integer.MAX_VALUE, null, null), popularityIndex.top(Integer.MAX_VALUE, null, null));
+        for (int genre = 1; genre <= 6; genre++) {
+            assertEquals(loaded.top(Integer.MAX_VALUE, genre, null), popularityIndex.top(Integer.MAX_VALUE, genre, null));
+            assertEquals(loaded.top(Integer.MAX_VALUE, genre, 2000), popularityIndex.top(Integer.MAX_VALUE, genre, 2000));
+        }
+        for (Long filmId : films) {
+            assertEquals(loaded.likes(filmId), popularityIndex.likes(filmId), "likes of film " + filmId);
+        }
+    }
+
+    @Test
+    void likesIndexMatchesDatabaseAfterLikesAndDeletions() {
+        Random random = new Random(12);
+        List<Long> users = createUsers(6);
+        List<Long> films = createFilms(8, random);
+        randomLikes(users, films, random, 80);
+        filmService.deleteFilmById(films.get(0));
+        userService.deleteUserById(users.get(0));
+
+        LikesIndex loaded = new LikesIndex(jdbcTemplate, new SimpleMeterRegistry());
+        loaded.rebuild();
+        for (Long userId : users) {
+            assertEquals(loaded.recommendations(userId), likesIndex.recommendations(userId),
+                    "recommendations of " + userId);
+            for (Long otherId : users) {
+                assertEquals(loaded.commonFilms(userId, otherId), likesIndex.commonFilms(userId, otherId),
+                        "common films of " + userId + " and " + otherId);
+            }
+        }
+        for (Long filmId : films) {
+            assertEquals(loaded.likesCount(filmId), likesIndex.likesCount(filmId), "likes of film " + filmId);
+        }
+    }
+
+    @Test
+    void cachedFilmsMatchDatabaseAfterLikesAndDeletions() {
+        Random random = new Random(15);
+        List<Long> users = createUsers(5);
+        List<Long> films = createFilms(6, random);
+        films.forEach(filmService::findFilmById);
+        randomLikes(users, films, random, 60);
+        userService.deleteUserById(users.get(0));
+
+        for (Long filmId : films) {
+            assertEquals(new HashSet<>(jdbcTemplate.queryForList(
+                            "SELECT user_id FROM film_likes WHERE film_id = ?", Long.class, filmId)),
+                    filmService.findFilmById(filmId).getLikes(), "likes of film " + filmId);
+        }
+    }
+
+    @Test
+    void cachedUsersMatchDatabaseAfterFriendshipsAndDeletions() {
+        Random random = new Random(16);
+        List<Long> users = createUsers(8);
+        users.forEach(userService::findUserById);
+        randomFriendships(users, random, 60);
+        userService.deleteUserById(users.get(0));
+
+        for (Long userId : users.subList(1, users.size())) {
+            assertEquals(new HashSet<>(jdbcTemplate.queryForList(
+                            "SELECT friend_id FROM friends WHERE user_id = ?", Long.class, userId)),
+                    userService.findUserById(userId).getFriends(), "friends of user " + userId);
+        }
+    }
+
+    @Test
+    void socialGraphMatchesDatabaseAfterFriendshipsAndDeletions() {
+        Random random = new Random(18);
+        List<Long> users = createUsers(10);
+        randomFriendships(users, random, 80);
+        userService.deleteUserById(users.get(0));
+
+        SocialGraph loaded = new SocialGraph(jdbcTemplate, new SimpleMeterRegistry());
+        loaded.rebuild();
+        for (Long userId : users) {
+            assertArrayEquals(loaded.friends(userId), socialGraph.friends(userId), "friends of " + userId);
+            assertArrayEquals(loaded.followers(userId), socialGraph.followers(userId), "followers of " + userId);
+            assertEquals(loaded.suggestFriends(userId, 5), socialGraph.suggestFriends(userId, 5),
+                    "suggestions for " + userId);
+            for (Long otherId : users) {
+                assertEquals(loaded.mutualFriends(userId, otherId), socialGraph.mutualFriends(userId, otherId),
+                        "mutual friends of " + userId + " and " + otherId);
+                assertEquals(loaded.degreeOfSeparation(userId, otherId, 6),
+                        socialGraph.degreeOfSeparation(userId, otherId, 6),
+                        "separation of " + userId + " and " + otherId);
+            }
+        }
+    }
+
+    private void randomFriendships(List<Long> users, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            Long userId = users.get(random.nextInt(users.size()));
+            Long friendId = users.get(random.nextInt(users.size()));
+            if (userId.equals(friendId)) {
+                continue;
+            }
+            if (random.nextInt(3) == 0) {
+                userService.friendDelete(userId, friendId);
+            } else {
+                userService.friendAdd(userId, friendId);
+            }
+        }
+    }
+
+    private void randomLikes(List<Long> users, List<Long> films, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            Long filmId = films.get(random.nextInt(films.size()));
+            Long userId = users.get(random.nextInt(users.size()));
+            if (random.nextInt(3) == 0) {
+                filmService.deleteLikeFilm(filmId, userId);
+            } else {
+                filmService.likeFilm(filmId, userId);
+            }
+        }
+    }
+
+    private List<Long> createUsers(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = SEQUENCE.incrementAndGet();
+            ids.add(userService.create(User.builder()
+                    .login("user" + n)
+                    .name("user" + n)
+                    .email("user" + n + "@mail.ru")
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .friends(new HashSet<>())
+                    .build()).getId());
+        }
+        return ids;
+    }
+
+    private List<Long> createFilms(int count, Random random) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            TreeSet<Genre> genres = new TreeSet<>();
+            genres.add(Genre.builder().id(1 + random.nextInt(6)).build());
+            ids.add(filmService.create(Film.builder()
+                    .name("film " + SEQUENCE.incrementAndGet())
+                    .description("description")
+                    .releaseDate(LocalDate.of(random.nextBoolean() ? 2000 : 2010, 1, 1))
+                    .duration(100)
+                    .mpa(Mpa.builder().id(1).build())
+                    .genres(genres)
+                    .directors(new HashSet<>())
+                    .build()).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,110 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the like bitmaps with plain sets of liked films per user.
+ */
+class LikesIndexTest {
+
+    private static final int USERS = 30;
+
+    private static final int FILMS = 40;
+
+    @Test
+    void queriesMatchPlainSetsAfterRandomChanges() {
+        Random random = new Random(13);
+        LikesIndex index = new LikesIndex(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+        Map<Long, Set<Long>> likes = new HashMap<>();
+        for (int step = 0; step < 5000; step++) {
+            long userId = 1 + random.nextInt(USERS);
+            long filmId = 1 + random.nextInt(FILMS);
+            int action = random.nextInt(100);
+            if (action < 60) {
+                index.onLikeAdded(filmId, userId);
+                likes.computeIfAbsent(userId, id -> new TreeSet<>()).add(filmId);
+            } else if (action < 97) {
+                index.onLikeRemoved(filmId, userId);
+                likes.getOrDefault(userId, new TreeSet<>()).remove(filmId);
+            } else if (action == 97) {
+                index.onFilmDeleted(filmId);
+                likes.values().forEach(films -> films.remove(filmId));
+            } else {
+                index.onUserDeleted(userId);
+                likes.remove(userId);
+            }
+            if (step % 250 == 0) {
+                assertQueries(index, likes);
+            }
+        }
+    }
+
+    @Test
+    void usersWithTheSameLikesRecommendNothing() {
+        LikesIndex index = new LikesIndex(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+        index.onLikeAdded(1L, 1L);
+        index.onLikeAdded(1L, 2L);
+
+        assertEquals(List.of(), index.recommendations(1L));
+
+        index.onLikeAdded(2L, 2L);
+        assertEquals(List.of(2L), index.recommendations(1L));
+        assertEquals(List.of(), index.recommendations(3L));
+    }
+
+    private static void assertQueries(LikesIndex index, Map<Long, Set<Long>> likes) {
+        for (long userId = 1; userId <= USERS; userId++) {
+            assertEquals(recommendations(likes, userId), index.recommendations(userId), "recommendations of " + userId);
+            for (long otherId = userId; otherId <= USERS; otherId += 7) {
+                Set<Long> common = new TreeSet<>(films(likes, userId));
+                common.retainAll(films(likes, otherId));
+                assertEquals(new ArrayList<>(common), index.commonFilms(userId, otherId),
+                        "common films of " + userId + " and " + otherId);
+            }
+        }
+        for (long filmId = 1; filmId <= FILMS; filmId++) {
+            long id = filmId;
+            assertEquals(likes.values().stream().filter(films -> films.contains(id)).count(), index.likesCount(filmId),
+                    "likes of " + filmId);
+        }
+    }
+
+    private static List<Long> recommendations(Map<Long, Set<Long>> likes, long userId) {
+        Set<Long> target = films(likes, userId);
+        Set<Long> best = null;
+        long bestCount = 0;
+        for (long otherId = 1; otherId <= USERS; otherId++) {
+            Set<Long> other = films(likes, otherId);
+            long count = other.stream().filter(target::contains).count();
+            if (otherId == userId || count == 0 || other.equals(target)) {
+                continue;
+            }
+            if (count > bestCount) {
+                best = other;
+                bestCount = count;
+            }
+        }
+        if (best == null) {
+            return List.of();
+        }
+        return best.stream().filter(filmId -> !target.contains(filmId)).sorted().collect(Collectors.toList());
+    }
+
+    private static Set<Long> films(Map<Long, Set<Long>> likes, long userId) {
+        return likes.getOrDefault(userId, Set.of());
+    }
+}
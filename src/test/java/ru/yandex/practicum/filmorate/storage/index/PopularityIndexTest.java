@@ -0,0 +1,128 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the popularity index with a naive filter and sort over all films
+ * after random saves, likes and deletions.
+ */
+class PopularityIndexTest {
+
+    private static final int[] YEARS = {1990, 2000, 2010};
+
+    private PopularityIndex index;
+
+    private Map<Long, Film> films;
+
+    private Map<Long, Integer> likes;
+
+    @BeforeEach
+    void setUp() {
+        index = new PopularityIndex(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+        films = new HashMap<>();
+        likes = new HashMap<>();
+    }
+
+    @Test
+    void topMatchesNaiveOrderAfterRandomChanges() {
+        Random random = new Random(7);
+        for (int step = 0; step < 5000; step++) {
+            long filmId = 1 + random.nextInt(200);
+            int action = random.nextInt(10);
+            if (action < 2) {
+                int[] genres = random.ints(1, 7).limit(random.nextInt(3)).toArray();
+                Film film = film(filmId, YEARS[random.nextInt(YEARS.length)], genres);
+                index.onFilmSaved(film);
+                films.put(filmId, film);
+                likes.putIfAbsent(filmId, 0);
+            } else if (action < 8) {
+                int delta = random.nextInt(3) == 0 ? -1 : 1;
+                index.onLikesChanged(filmId, delta);
+                likes.computeIfPresent(filmId, (id, count) -> Math.max(0, count + delta));
+            } else if (action == 8) {
+                index.onFilmDeleted(filmId);
+                films.remove(filmId);
+                likes.remove(filmId);
+            }
+            if (step % 500 == 0) {
+                assertSameTop();
+            }
+        }
+        assertSameTop();
+    }
+
+    @Test
+    void likesOfUnknownFilmAreZero() {
+        index.onLikesChanged(1L, 1);
+
+        assertEquals(0, index.likes(1L));
+        assertEquals(List.of(), index.top(10, null, null));
+    }
+
+    @Test
+    void topIsLimitedByCount() {
+        for (long id = 1; id <= 5; id++) {
+            index.onFilmSaved(film(id, 2000, 1));
+            for (int i = 0; i < id; i++) {
+                index.onLikesChanged(id, 1);
+            }
+        }
+
+        assertEquals(List.of(5L, 4L), index.top(2, null, null));
+        assertEquals(List.of(5L, 4L, 3L, 2L, 1L), index.top(10, 1, 2000));
+        assertEquals(List.of(), index.top(10, 2, null));
+    }
+
+    private void assertSameTop() {
+        assertTop(null, null);
+        for (int genre = 1; genre <= 6; genre++) {
+            assertTop(genre, null);
+            for (int year : YEARS) {
+                assertTop(genre, year);
+            }
+        }
+        for (int year : YEARS) {
+            assertTop(null, year);
+        }
+    }
+
+    private void assertTop(Integer genreId, Integer year) {
+        List<Long> expected = films.values().stream()
+                .filter(film -> genreId == null || film.getGenres().stream().anyMatch(g -> g.getId() == genreId))
+                .filter(film -> year == null || film.getReleaseDate().getYear() == year)
+                .map(Film::getId)
+                .sorted(Comparator.comparing((Long id) -> likes.get(id)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(20)
+                .collect(Collectors.toList());
+        assertEquals(expected, index.top(20, genreId, year), "genre " + genreId + ", year " + year);
+        expected.forEach(id -> assertEquals(likes.get(id), index.likes(id)));
+    }
+
+    private static Film film(long id, int year, int... genres) {
+        return Film.builder()
+                .id(id)
+                .releaseDate(LocalDate.of(year, 1, 1))
+                .genres(IntStream.of(genres).mapToObj(genre -> Genre.builder().id(genre).build())
+                        .collect(Collectors.toCollection(TreeSet::new)))
+                .build();
+    }
+}
@@ -0,0 +1,104 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the best keys of the trie with sorting of all names matching the prefix.
+ */
+class PrefixTrieTest {
+
+    private static final String[] WORDS = {"Dark", "dar", "Knight", "kni", "Star", "stars", "Ёлка", "a", "ab"};
+
+    private static final String[] PREFIXES = {"", "d", "DA", "dark", "k", "kn", "s", "star", "ё", "a", "ab", "z"};
+
+    @Test
+    void topMatchesSortedScanAfterRandomChanges() {
+        Random random = new Random(7);
+        PrefixTrie trie = new PrefixTrie();
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, Integer> scores = new HashMap<>();
+        for (int step = 0; step < 5000; step++) {
+            long key = random.nextInt(200);
+            int action = random.nextInt(10);
+            if (action < 2) {
+                trie.remove(key);
+                names.remove(key);
+                scores.remove(key);
+            } else if (action < 6) {
+                String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+                int score = random.nextInt(20);
+                trie.put(key, name, score);
+                names.put(key, name);
+                scores.put(key, score);
+            } else if (names.containsKey(key)) {
+                int score = Math.max(0, scores.get(key) + random.nextInt(7) - 3);
+                trie.setScore(key, score);
+                scores.put(key, score);
+            }
+            if (step % 100 == 0) {
+                assertTop(trie, names, scores);
+            }
+        }
+    }
+
+    @Test
+    void bulkLoadMatchesPuts() {
+        Random random = new Random(9);
+        PrefixTrie loaded = new PrefixTrie();
+        Map<Long, String> names = new HashMap<>();
+        Map<Long, Integer> scores = new HashMap<>();
+        for (long key = 0; key < 500; key++) {
+            String name = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+            int score = random.nextInt(50);
+            loaded.load(key, name, score);
+            names.put(key, name);
+            scores.put(key, score);
+        }
+        loaded.refreshAll();
+
+        assertTop(loaded, names, scores);
+    }
+
+    @Test
+    void removedNameIsNotFound() {
+        PrefixTrie trie = new PrefixTrie();
+        trie.put(1, "The Dark Knight", 5);
+        trie.put(2, "Dark City", 1);
+        trie.remove(1);
+
+        assertEquals(List.of(2L), trie.top("dar", 10));
+        assertEquals(List.of(), trie.top("kni", 10));
+    }
+
+    private static void assertTop(PrefixTrie trie, Map<Long, String> names, Map<Long, Integer> scores) {
+        for (String prefix : PREFIXES) {
+            for (int limit : new int[]{1, 5, PrefixTrie.TOP_SIZE, PrefixTrie.TOP_SIZE + 1, 1000}) {
+                assertEquals(naive(names, scores, prefix, limit), trie.top(prefix, limit),
+                        "prefix '" + prefix + "' limit " + limit);
+            }
+        }
+    }
+
+    private static List<Long> naive(Map<Long, String> names, Map<Long, Integer> scores, String prefix, int limit) {
+        String normalized = prefix.toLowerCase(Locale.ROOT);
+        return names.keySet().stream()
+                .filter(key -> Arrays.stream(names.get(key).toLowerCase(Locale.ROOT).split("\\s+"))
+                        .anyMatch(word -> word.startsWith(normalized)))
+                .sorted(Comparator.comparing((Long key) -> scores.get(key)).reversed()
+                        .thenComparing(names::get)
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,150 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Compares the social graph with plain sets of friends per user and a breadth-first search over them.
+ */
+class SocialGraphTest {
+
+    private static final int USERS = 40;
+
+    @Test
+    void queriesMatchPlainSetsAfterRandomChanges() {
+        Random random = new Random(17);
+        SocialGraph graph = new SocialGraph(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+        Map<Long, Set<Long>> friends = new HashMap<>();
+        for (int step = 0; step < 4000; step++) {
+            long userId = 1 + random.nextInt(USERS);
+            long friendId = 1 + random.nextInt(USERS);
+            int action = random.nextInt(100);
+            if (action < 55) {
+                if (userId != friendId) {
+                    graph.onFriendAdded(userId, friendId);
+                    friends.computeIfAbsent(userId, id -> new TreeSet<>()).add(friendId);
+                }
+            } else if (action < 98) {
+                graph.onFriendRemoved(userId, friendId);
+                friendsOf(friends, userId).remove(friendId);
+            } else {
+                graph.onUserDeleted(userId);
+                friends.remove(userId);
+                friends.values().forEach(ids -> ids.remove(userId));
+            }
+            if (step % 200 == 0) {
+                assertQueries(graph, friends);
+            }
+        }
+        assertQueries(graph, friends);
+    }
+
+    @Test
+    void separationIsLimitedByMaxDepth() {
+        SocialGraph graph = new SocialGraph(mock(JdbcTemplate.class), new SimpleMeterRegistry());
+        for (long userId = 1; userId < 8; userId++) {
+            graph.onFriendAdded(userId, userId + 1);
+        }
+
+        assertEquals(0, graph.degreeOfSeparation(3L, 3L, 1));
+        assertEquals(7, graph.degreeOfSeparation(1L, 8L, 7));
+        assertNull(graph.degreeOfSeparation(1L, 8L, 6));
+        assertNull(graph.degreeOfSeparation(8L, 1L, 7));
+    }
+
+    private static void assertQueries(SocialGraph graph, Map<Long, Set<Long>> friends) {
+        for (long userId = 1; userId <= USERS; userId++) {
+            long id = userId;
+            assertArrayEquals(toArray(friendsOf(friends, userId)), graph.friends(userId), "friends of " + userId);
+            assertArrayEquals(toArray(friends.entrySet().stream()
+                            .filter(entry -> entry.getValue().contains(id))
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toCollection(TreeSet::new))),
+                    graph.followers(userId), "followers of " + userId);
+            for (int limit : new int[]{1, 3, USERS}) {
+                assertEquals(suggestions(friends, userId, limit), graph.suggestFriends(userId, limit),
+                        "suggestions for " + userId + " limit " + limit);
+            }
+            for (long otherId = 1 + userId % 5; otherId <= USERS; otherId += 5) {
+                Set<Long> mutual = new TreeSet<>(friendsOf(friends, userId));
+                mutual.retainAll(friendsOf(friends, otherId));
+                assertEquals(new ArrayList<>(mutual), graph.mutualFriends(userId, otherId),
+                        "mutual friends of " + userId + " and " + otherId);
+                for (int maxDepth : new int[]{1, 2, 6}) {
+                    assertEquals(separation(friends, userId, otherId, maxDepth),
+                            graph.degreeOfSeparation(userId, otherId, maxDepth),
+                            "separation of " + userId + " and " + otherId + " within " + maxDepth);
+                }
+            }
+        }
+    }
+
+    private static Map<Long, Integer> suggestions(Map<Long, Set<Long>> friends, long userId, int limit) {
+        Set<Long> own = friendsOf(friends, userId);
+        Map<Long, Integer> counts = new HashMap<>();
+        for (long friendId : own) {
+            for (long candidate : friendsOf(friends, friendId)) {
+                if (candidate != userId && !own.contains(candidate)) {
+                    counts.merge(candidate, 1, Integer::sum);
+                }
+            }
+        }
+        Map<Long, Integer> result = new LinkedHashMap<>();
+        counts.entrySet().stream()
+                .sorted(Map.Entry.<Long, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey(Comparator.naturalOrder())))
+                .limit(limit)
+                .forEach(entry -> result.put(entry.getKey(), entry.getValue()));
+        return result;
+    }
+
+    private static Integer separation(Map<Long, Set<Long>> friends, long userId, long otherId, int maxDepth) {
+        Map<Long, Integer> depths = new HashMap<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        depths.put(userId, 0);
+        queue.add(userId);
+        while (!queue.isEmpty()) {
+            long id = queue.poll();
+            int depth = depths.get(id);
+            if (id == otherId) {
+                return depth;
+            }
+            if (depth == maxDepth) {
+                continue;
+            }
+            for (long friendId : friendsOf(friends, id)) {
+                if (depths.putIfAbsent(friendId, depth + 1) == null) {
+                    queue.add(friendId);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Set<Long> friendsOf(Map<Long, Set<Long>> friends, long userId) {
+        return friends.getOrDefault(userId, new TreeSet<>());
+    }
+
+    private static long[] toArray(Set<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+}
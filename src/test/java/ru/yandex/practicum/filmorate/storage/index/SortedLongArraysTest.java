@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Compares the sorted arrays with sorted sets of the same values.
+ */
+class SortedLongArraysTest {
+
+    @Test
+    void operationsMatchSortedSetsAfterRandomChanges() {
+        Random random = new Random(19);
+        long[] first = SortedLongArrays.EMPTY;
+        long[] second = SortedLongArrays.EMPTY;
+        Set<Long> firstSet = new TreeSet<>();
+        Set<Long> secondSet = new TreeSet<>();
+        for (int step = 0; step < 5000; step++) {
+            long value = random.nextInt(100) - 10;
+            boolean toFirst = random.nextBoolean();
+            long[] array = toFirst ? first : second;
+            Set<Long> set = toFirst ? firstSet : secondSet;
+            long[] changed;
+            boolean expectChange;
+            if (random.nextInt(10) < 6) {
+                expectChange = set.add(value);
+                changed = SortedLongArrays.insert(array, value);
+            } else {
+                expectChange = set.remove(value);
+                changed = SortedLongArrays.remove(array, value);
+            }
+            if (!expectChange) {
+                assertSame(array, changed, "unchanged array is returned as is");
+            }
+            if (toFirst) {
+                first = changed;
+            } else {
+                second = changed;
+            }
+            assertArrayEquals(toArray(firstSet), first);
+            assertArrayEquals(toArray(secondSet), second);
+            long probe = random.nextInt(100) - 10;
+            assertEquals(firstSet.contains(probe), SortedLongArrays.contains(first, probe), "contains " + probe);
+            Set<Long> common = new TreeSet<>(firstSet);
+            common.retainAll(secondSet);
+            assertArrayEquals(toArray(common), SortedLongArrays.intersect(first, second));
+        }
+    }
+
+    @Test
+    void insertDoesNotChangeTheArray() {
+        long[] array = {1, 3, 5};
+        long[] inserted = SortedLongArrays.insert(array, 4);
+        long[] removed = SortedLongArrays.remove(array, 3);
+
+        assertArrayEquals(new long[]{1, 3, 5}, array);
+        assertArrayEquals(new long[]{1, 3, 4, 5}, inserted);
+        assertArrayEquals(new long[]{1, 5}, removed);
+        assertArrayEquals(SortedLongArrays.EMPTY, SortedLongArrays.intersect(array, SortedLongArrays.EMPTY));
+    }
+
+    private static long[] toArray(Set<Long> values) {
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+}
@@ -0,0 +1,156 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.impl.FeedDbStorageImpl;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares pages of timelines with the events of friends read from the feed.
+ * Timelines are short and the fan-out limit is low, so pages older than the kept events
+ * and events of popular authors are pulled from the feed.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:timeline-index",
+        "filmorate.feed.writer.mode=SYNC"})
+class TimelineIndexTest {
+
+    private static final int SIZE = 5;
+
+    private static final int FANOUT_LIMIT = 3;
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SocialGraph socialGraph;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private FeedDbStorageImpl feedDbStorage;
+
+    @Test
+    void pagesMatchFeedOfFriends() {
+        Random random = new Random(25);
+        List<Long> users = createUsers(8);
+        for (Long userId : users) {
+            for (Long friendId : users) {
+                if (!userId.equals(friendId) && random.nextInt(2) == 0) {
+                    userService.friendAdd(userId, friendId);
+                }
+            }
+        }
+        TimelineIndex index = new TimelineIndex(jdbcTemplate, socialGraph, new SimpleMeterRegistry(),
+                SIZE, FANOUT_LIMIT, 1000);
+        users.forEach(userId -> index.eventIds(userId, null, 1));
+        for (int i = 0; i < 60; i++) {
+            Feed feed = addLike(users.get(random.nextInt(users.size())), (long) i);
+            index.fanOut(feed);
+        }
+
+        for (Long userId : users) {
+            for (int limit : new int[]{1, 3, SIZE, 20}) {
+                assertPages(index, userId, limit);
+            }
+        }
+    }
+
+    @Test
+    void writtenEventIsPushedByFanoutThread() throws InterruptedException {
+        List<Long> users = createUsers(2);
+        userService.friendAdd(users.get(0), users.get(1));
+        TimelineIndex index = new TimelineIndex(jdbcTemplate, socialGraph, new SimpleMeterRegistry(),
+                SIZE, FANOUT_LIMIT, 1000);
+        try {
+            index.eventIds(users.get(0), null, 1);
+            Feed feed = addLike(users.get(1), 1L);
+            index.onFeedAdded(feed);
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!index.eventIds(users.get(0), null, 1).equals(List.of(feed.getEventId()))
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of(feed.getEventId()), index.eventIds(users.get(0), null, 1));
+        } finally {
+            index.shutdown();
+        }
+    }
+
+    /**
+     * Reads the whole timeline page by page and compares every page with the feed of friends
+     */
+    private void assertPages(TimelineIndex index, Long userId, int limit) {
+        Long before = null;
+        int pages = 0;
+        List<Long> page;
+        do {
+            page = index.eventIds(userId, before, limit);
+            assertEquals(expected(userId, before, limit), page,
+                    "timeline of " + userId + " before " + before + " limit " + limit);
+            if (!page.isEmpty()) {
+                before = page.get(page.size() - 1);
+            }
+            assertTrue(++pages < 1000);
+        } while (page.size() == limit);
+    }
+
+    private List<Long> expected(Long userId, Long before, int limit) {
+        List<Long> friends = new ArrayList<>(new HashSet<>(jdbcTemplate.queryForList(
+                "SELECT friend_id FROM friends WHERE user_id = ?", Long.class, userId)));
+        if (friends.isEmpty()) {
+            return List.of();
+        }
+        String in = friends.stream().map(String::valueOf).collect(Collectors.joining(","));
+        return jdbcTemplate.queryForList("SELECT event_id FROM feed WHERE user_id IN (" + in + ") "
+                + "AND event_id < ? ORDER BY event_id DESC LIMIT ?", Long.class,
+                before == null ? Long.MAX_VALUE : before, limit);
+    }
+
+    private List<Long> createUsers(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int n = SEQUENCE.incrementAndGet();
+            ids.add(userService.create(User.builder()
+                    .login("timeline" + n)
+                    .name("timeline" + n)
+                    .email("timeline" + n + "@mail.ru")
+                    .birthday(LocalDate.of(1990, 1, 1))
+                    .friends(new HashSet<>())
+                    .build()).getId());
+        }
+        return ids;
+    }
+
+    private Feed addLike(Long userId, Long filmId) {
+        return feedDbStorage.add(Feed.builder()
+                .timestamp(System.currentTimeMillis())
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(OperationType.ADD)
+                .entityId(filmId)
+                .build());
+    }
+}
@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.storage.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares trigram search with a plain case-insensitive substring check over all texts.
+ */
+class TrigramIndexTest {
+
+    private static final String[] WORDS = {"Dark", "star", "NIGHT", "knight", "Stars", "dar", "ok", "ё", "Ёлка", "a"};
+
+    @Test
+    void searchMatchesSubstringCheckAfterRandomChanges() {
+        Random random = new Random(3);
+        TrigramIndex index = new TrigramIndex();
+        Map<Long, String> texts = new HashMap<>();
+        for (int step = 0; step < 3000; step++) {
+            long id = random.nextInt(100);
+            if (random.nextInt(4) == 0) {
+                index.remove(id);
+                texts.remove(id);
+            } else {
+                String text = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)];
+                index.put(id, text);
+                texts.put(id, text);
+            }
+            if (step % 100 == 0) {
+                for (String query : new String[]{"a", "ar", "dar", "DARK", "k st", "night", "ght s", "ёл", "zzz", ""}) {
+                    assertEquals(naive(texts, query), index.search(query), "query '" + query + "'");
+                }
+                String text = texts.values().stream().findAny().orElse("");
+                int start = text.isEmpty() ? 0 : random.nextInt(text.length());
+                String query = text.substring(start, Math.min(text.length(), start + 1 + random.nextInt(6)));
+                assertEquals(naive(texts, query), index.search(query), "query '" + query + "'");
+            }
+        }
+    }
+
+    @Test
+    void clearRemovesAllTexts() {
+        TrigramIndex index = new TrigramIndex();
+        index.put(1, "Inception");
+        index.clear();
+
+        assertEquals(Set.of(), index.search("cep"));
+        assertEquals(Set.of(), index.search("i"));
+    }
+
+    private static Set<Long> naive(Map<Long, String> texts, String query) {
+        String normalized = query.toLowerCase(Locale.ROOT);
+        return texts.entrySet().stream()
+                .filter(entry -> entry.getValue().toLowerCase(Locale.ROOT).contains(normalized))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+}
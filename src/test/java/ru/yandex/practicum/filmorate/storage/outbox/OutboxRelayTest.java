@@ -0,0 +1,276 @@
+package ru.yandex.practicum.filmorate.storage.outbox;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.model.OutboxEvent;
+import ru.yandex.practicum.filmorate.model.feedEnum.EventType;
+import ru.yandex.practicum.filmorate.model.feedEnum.OperationType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Dispatches events through a relay with recording subscribers and checks the order of delivery,
+ * that only applied events are removed from the outbox and that failed events are retried and finally dropped.
+ * The relay updates the outbox on its own thread, tests wait for it before they read the outbox.
+ */
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:outbox-relay")
+class OutboxRelayTest {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Recorder memory = new Recorder(false);
+
+    private final Recorder durable = new Recorder(true);
+
+    private OutboxRelay relay;
+
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void createRelay() {
+        jdbcTemplate.update("DELETE FROM outbox");
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, List.of(memory, durable), MAX_ATTEMPTS);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void eventsOfTransactionsAreDispatchedOnceInOrder() {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            long entityId = i;
+            ids.addAll(transactionTemplate.execute(status -> List.of(
+                    append(entityId).getEventId(),
+                    append(entityId).getEventId())));
+        }
+
+        relay.awaitDispatched();
+
+        assertEquals(ids, memory.ids());
+        assertEquals(ids, durable.ids());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void rolledBackEventsAreNotDispatched() {
+        transactionTemplate.executeWithoutResult(status -> {
+            append(1);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(List.of(), memory.ids());
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void concurrentTransactionsAreDispatchedByOneRelayAtATime() throws Exception {
+        AtomicInteger inside = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        OutboxSubscriber guard = event -> {
+            if (inside.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            Thread.yield();
+            inside.decrementAndGet();
+        };
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, List.of(guard, memory), MAX_ATTEMPTS);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Long> ids = new ArrayList<>();
+        try {
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    List<Long> appended = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        long entityId = i;
+                        appended.add(transactionTemplate.execute(status -> append(entityId).getEventId()));
+                    }
+                    return appended;
+                }));
+            }
+            for (Future<List<Long>> future : futures) {
+                ids.addAll(future.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        relay.relay();
+        relay.awaitDispatched();
+
+        assertEquals(0, overlaps.get(), "subscribers are never called concurrently");
+        assertEquals(ids.size(), memory.ids().size(), "every event is dispatched once");
+        assertEquals(new HashSet<>(ids), new HashSet<>(memory.ids()));
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void failedEventIsKeptAndRetriedForDurableSubscribers() {
+        durable.failing.add(2L);
+        List<Long> ids = transactionTemplate.execute(status -> List.of(
+                append(1).getEventId(),
+                append(2).getEventId(),
+                append(3).getEventId()));
+        relay.awaitDispatched();
+
+        assertEquals(ids, memory.ids());
+        assertEquals(List.of(ids.get(1)), remainingIds());
+        assertEquals(1, attempts(ids.get(1)));
+
+        durable.failing.clear();
+        assertEquals(1, relay.retryFailed());
+
+        assertEquals(List.of(ids.get(0), ids.get(1), ids.get(2), ids.get(1)), durable.ids(),
+                "the failed event is received again");
+        assertEquals(ids, memory.ids(), "in-memory subscribers do not get retries");
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void failedEventIsDroppedAfterMaxAttempts() {
+        durable.failing.add(5L);
+        Long id = transactionTemplate.execute(status -> append(5).getEventId());
+        relay.awaitDispatched();
+        for (int attempt = 2; attempt < MAX_ATTEMPTS; attempt++) {
+            relay.retryFailed();
+            assertEquals(attempt, attempts(id));
+        }
+        relay.retryFailed();
+
+        assertEquals(0, outboxSize());
+        assertEquals(MAX_ATTEMPTS, durable.ids().size());
+    }
+
+    @Test
+    void failureOfInMemorySubscriberDoesNotKeepEvent() {
+        memory.failing.add(7L);
+        transactionTemplate.executeWithoutResult(status -> append(7));
+        relay.awaitDispatched();
+
+        assertEquals(0, outboxSize());
+        assertEquals(1, durable.ids().size());
+    }
+
+    @Test
+    void pageIsPassedAtOnceAndCommitDoesNotWaitForDurableWrites() {
+        List<List<Long>> pages = new ArrayList<>();
+        List<CompletableFuture<?>> writes = new ArrayList<>();
+        OutboxSubscriber writer = new OutboxSubscriber() {
+            @Override
+            public void onEvent(OutboxEvent event) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<CompletableFuture<?>> onEvents(List<OutboxEvent> events) {
+                pages.add(events.stream().map(OutboxEvent::getEventId).collect(Collectors.toList()));
+                List<CompletableFuture<?>> page = new ArrayList<>();
+                events.forEach(event -> page.add(new CompletableFuture<>()));
+                writes.addAll(page);
+                return page;
+            }
+
+            @Override
+            public boolean replayOnStart() {
+                return true;
+            }
+        };
+        relay = new OutboxRelay(jdbcTemplate, transactionManager, List.of(memory, writer), MAX_ATTEMPTS);
+        List<Long> ids = transactionTemplate.execute(status -> List.of(
+                append(1).getEventId(),
+                append(2).getEventId(),
+                append(3).getEventId()));
+
+        assertEquals(List.of(ids), pages, "the page is passed by one call");
+        assertEquals(ids, memory.ids(), "in-memory subscribers apply the page before commit returns");
+        assertEquals(ids, remainingIds(), "events are kept until the writes complete");
+
+        relay.relay();
+        assertEquals(1, pages.size(), "events in flight are not passed again");
+
+        writes.forEach(write -> write.complete(null));
+        relay.awaitDispatched();
+        assertEquals(0, outboxSize());
+    }
+
+    @Test
+    void leftEventsAreReplayedToDurableSubscribersOnly() {
+        jdbcTemplate.update("INSERT INTO outbox (event_time, event_type, operation, user_id, entity_id) "
+                + "VALUES (CURRENT_TIMESTAMP, 'LIKE', 'ADD', 1, 1), (CURRENT_TIMESTAMP, 'LIKE', 'ADD', 1, 2)");
+
+        assertEquals(2, relay.replayPending());
+        assertEquals(2, durable.ids().size());
+        assertTrue(memory.ids().isEmpty());
+        assertEquals(0, outboxSize());
+    }
+
+    private OutboxEvent append(long entityId) {
+        return relay.append(EventType.LIKE, OperationType.ADD, 1L, entityId);
+    }
+
+    private int outboxSize() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM outbox", Integer.class);
+    }
+
+    private List<Long> remainingIds() {
+        return jdbcTemplate.queryForList("SELECT event_id FROM outbox ORDER BY event_id", Long.class);
+    }
+
+    private int attempts(Long eventId) {
+        return jdbcTemplate.queryForObject("SELECT attempts FROM outbox WHERE event_id = ?", Integer.class, eventId);
+    }
+
+    /**
+     * Subscriber recording received events, fails on events of the entities in the failing set
+     */
+    private static final class Recorder implements OutboxSubscriber {
+
+        private final boolean durable;
+
+        private final List<OutboxEvent> received = new ArrayList<>();
+
+        private final Set<Long> failing = new HashSet<>();
+
+        private Recorder(boolean durable) {
+            this.durable = durable;
+        }
+
+        @Override
+        public synchronized void onEvent(OutboxEvent event) {
+            received.add(event);
+            if (failing.contains(event.getEntityId())) {
+                throw new IllegalStateException("failed on entity " + event.getEntityId());
+            }
+        }
+
+        @Override
+        public boolean replayOnStart() {
+            return durable;
+        }
+
+        private synchronized List<Long> ids() {
+            return received.stream().map(OutboxEvent::getEventId).collect(Collectors.toList());
+        }
+    }
+}